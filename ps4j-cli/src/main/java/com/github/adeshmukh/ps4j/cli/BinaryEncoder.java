@@ -0,0 +1,124 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+import com.github.adeshmukh.ps4j.DoubleMeasure;
+import com.github.adeshmukh.ps4j.LongMeasure;
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.MetricRegistry;
+import com.github.adeshmukh.ps4j.Record;
+
+/**
+ * Writes Records as a stream of typed binary values in network byte order. Each metric is described once, before the
+ * first Record that has a measure of it, and is then referred to by its id:
+ *
+ * <pre>
+ * stream  := magic:int(0x50534A42 "PSJB") version:byte(1) entry*
+ * entry   := METRIC:byte(1) id:short name:utf description:utf
+ *          | RECORD:byte(2) sweep:int timestamp:long vmId:int flags:byte count:short value{count}
+ * value   := id:short kind:byte payload
+ * payload := long (LONG=1) | double (DOUBLE=2) | utf (STRING=3) | long millis since the epoch (DATE=4) | (NULL=5)
+ * </pre>
+ *
+ * Bit 0 of the flags is set if the Record timed out. Strings are written as by {@link DataOutputStream#writeUTF}.
+ *
+ * @author adeshmukh
+ */
+class BinaryEncoder extends RecordEncoder {
+
+    static final int MAGIC = 0x50534A42;
+    static final byte VERSION = 1;
+
+    static final byte METRIC = 1;
+    static final byte RECORD = 2;
+
+    static final byte FLAG_TIMED_OUT = 1;
+
+    static final byte KIND_LONG = 1;
+    static final byte KIND_DOUBLE = 2;
+    static final byte KIND_STRING = 3;
+    static final byte KIND_DATE = 4;
+    static final byte KIND_NULL = 5;
+
+    private final DataOutputStream out;
+    private final MetricRegistry registry = new MetricRegistry();
+    private int numDescribed;
+    private boolean started;
+
+    BinaryEncoder(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    @Override
+    void encode(int sweep, long timestamp, Record record) throws IOException {
+        if (!started) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            started = true;
+        }
+        for (Measure<?> measure : record.getMeasures()) {
+            describe(measure.getMetric());
+        }
+
+        out.writeByte(RECORD);
+        out.writeInt(sweep);
+        out.writeLong(timestamp);
+        out.writeInt(record.getVmId());
+        out.writeByte(record.isTimedOut() ? FLAG_TIMED_OUT : 0);
+        out.writeShort(record.getMeasures().size());
+        for (Measure<?> measure : record.getMeasures()) {
+            out.writeShort(registry.idOf(measure.getMetric().getName()));
+            writeValue(measure);
+        }
+    }
+
+    private void describe(Metric<?> metric) throws IOException {
+        int id = registry.register(metric);
+        if (id < numDescribed) {
+            return;
+        }
+        out.writeByte(METRIC);
+        out.writeShort(id);
+        out.writeUTF(metric.getName());
+        out.writeUTF(metric.getDescription());
+        numDescribed++;
+    }
+
+    private void writeValue(Measure<?> measure) throws IOException {
+        if (measure instanceof LongMeasure) {
+            out.writeByte(KIND_LONG);
+            out.writeLong(((LongMeasure) measure).longValue());
+            return;
+        }
+        if (measure instanceof DoubleMeasure) {
+            out.writeByte(KIND_DOUBLE);
+            out.writeDouble(((DoubleMeasure) measure).doubleValue());
+            return;
+        }
+        Object value = measure.getValue();
+        if (value == null) {
+            out.writeByte(KIND_NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(KIND_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(KIND_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Date) {
+            out.writeByte(KIND_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else {
+            out.writeByte(KIND_STRING);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    @Override
+    void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Meter;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.MetricRegistry;
+import com.github.adeshmukh.ps4j.Ps4jConfig;
+import com.github.adeshmukh.ps4j.Record;
+
+/**
+ * Writes Records as comma separated values (RFC 4180). The header row names the columns <code>sweep</code>,
+ * <code>timestamp</code>, <code>vmId</code> and <code>timedOut</code>, followed by the requested metrics, or all the
+ * metrics supported by the Meters when none were requested, so that the columns do not depend on which measures the
+ * first Record happens to hold, e.g. when it timed out. Missing values are empty.
+ *
+ * @author adeshmukh
+ */
+class CsvEncoder extends TextRecordEncoder {
+
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    /**
+     * Holds only the metrics of the header, so that their ids are the indexes of their columns.
+     */
+    private final MetricRegistry registry = new MetricRegistry();
+    private final Measure<?>[] row;
+    private boolean headerWritten;
+
+    /**
+     * @param out
+     * @param config
+     *            configuration of the Ps4j whose Records are written, naming the metrics of the columns
+     */
+    CsvEncoder(Writer out, Ps4jConfig config) {
+        super(out);
+        for (Metric<?> metric : columns(config)) {
+            registry.register(metric);
+        }
+        row = new Measure<?>[registry.size()];
+    }
+
+    /**
+     * The requested metrics in the requested order, or all the metrics of the Meters in the order of the Meters.
+     */
+    private static List<Metric<?>> columns(Ps4jConfig config) {
+        Map<String, Metric<?>> supported = new LinkedHashMap<String, Metric<?>>();
+        for (Meter meter : config.getMeters()) {
+            for (Metric<?> metric : meter.supportedMetrics()) {
+                if (!supported.containsKey(metric.getName())) {
+                    supported.put(metric.getName(), metric);
+                }
+            }
+        }
+        if (config.getMetricNames().isEmpty()) {
+            return new ArrayList<Metric<?>>(supported.values());
+        }
+        List<Metric<?>> retval = new ArrayList<Metric<?>>();
+        for (String metricName : config.getMetricNames()) {
+            Metric<?> metric = supported.get(metricName);
+            if (metric != null) {
+                retval.add(metric);
+            }
+        }
+        return retval;
+    }
+
+    @Override
+    void encode(int sweep, long timestamp, Record record) throws IOException {
+        if (!headerWritten) {
+            writeHeader();
+            headerWritten = true;
+        }
+        for (Measure<?> measure : record.getMeasures()) {
+            int id = registry.idOf(measure.getMetric().getName());
+            if (id >= 0) {
+                row[id] = measure;
+            }
+        }
+
+        writeLong(sweep);
+        out.write(',');
+        writeLong(timestamp);
+        out.write(',');
+        writeLong(record.getVmId());
+        out.write(',');
+        out.write(record.isTimedOut() ? "true" : "false");
+        for (int i = 0; i < row.length; i++) {
+            out.write(',');
+            writeValue(row[i]);
+            row[i] = null;
+        }
+        out.write(LINE_SEPARATOR);
+    }
+
+    private void writeHeader() throws IOException {
+        out.write(SWEEP + ',' + TIMESTAMP + ',' + VM_ID + ',' + TIMED_OUT);
+        for (int id = 0; id < registry.size(); id++) {
+            out.write(',');
+            writeString(registry.get(id).getName());
+        }
+        out.write(LINE_SEPARATOR);
+    }
+
+    @Override
+    protected void writeNull() {}
+
+    @Override
+    protected void writeString(String s) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
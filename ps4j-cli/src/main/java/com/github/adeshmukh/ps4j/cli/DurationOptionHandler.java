@@ -0,0 +1,50 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.OptionDef;
+import org.kohsuke.args4j.spi.OneArgumentOptionHandler;
+import org.kohsuke.args4j.spi.Setter;
+
+/**
+ * Parses a duration such as <code>500ms</code>, <code>1s</code>, <code>2m</code> or <code>1h</code> into milliseconds.
+ * A value without a unit is taken to be in seconds.
+ *
+ * @author adeshmukh
+ */
+public class DurationOptionHandler extends OneArgumentOptionHandler<Long> {
+
+    private static final Pattern DURATION = Pattern.compile("(\\d+)(ms|s|m|h)?");
+
+    public DurationOptionHandler(CmdLineParser parser, OptionDef option, Setter<? super Long> setter) {
+        super(parser, option, setter);
+    }
+
+    @Override
+    protected Long parse(String argument) throws CmdLineException {
+        Matcher m = DURATION.matcher(argument.trim());
+        if (!m.matches()) {
+            throw new CmdLineException(owner, "Invalid duration \"" + argument + "\", expected e.g. 500ms, 1s, 2m");
+        }
+        long n = Long.parseLong(m.group(1));
+        String unit = m.group(2);
+        if ("ms".equals(unit)) {
+            return n;
+        }
+        if ("m".equals(unit)) {
+            return n * 60000L;
+        }
+        if ("h".equals(unit)) {
+            return n * 3600000L;
+        }
+        return n * 1000L;
+    }
+
+    @Override
+    public String getDefaultMetaVariable() {
+        return "1s";
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.net.InetSocketAddress;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.OptionDef;
+import org.kohsuke.args4j.spi.OneArgumentOptionHandler;
+import org.kohsuke.args4j.spi.Setter;
+
+/**
+ * Parses an address to listen on such as <code>9404</code>, for all interfaces, or <code>127.0.0.1:9404</code>.
+ *
+ * @author adeshmukh
+ */
+public class ListenAddressOptionHandler extends OneArgumentOptionHandler<InetSocketAddress> {
+
+    private static final Pattern ADDRESS = Pattern.compile("(?:(.+):)?(\\d+)");
+
+    public ListenAddressOptionHandler(CmdLineParser parser, OptionDef option, Setter<? super InetSocketAddress> setter) {
+        super(parser, option, setter);
+    }
+
+    @Override
+    protected InetSocketAddress parse(String argument) throws CmdLineException {
+        Matcher m = ADDRESS.matcher(argument.trim());
+        int port = m.matches() && m.group(2).length() <= 5 ? Integer.parseInt(m.group(2)) : -1;
+        if (port < 0 || port > 0xFFFF) {
+            throw new CmdLineException(owner, "Invalid address \"" + argument + "\", expected e.g. 9404 or localhost:9404");
+        }
+        return m.group(1) == null ? new InetSocketAddress(port) : new InetSocketAddress(m.group(1), port);
+    }
+
+    @Override
+    public String getDefaultMetaVariable() {
+        return "[HOST:]PORT";
+    }
+}
@@ -3,7 +3,13 @@ package com.github.adeshmukh.ps4j.cli;
 import static java.lang.System.err;
 import static java.lang.System.exit;
 import static java.lang.System.out;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.util.Collection;
 
 import org.kohsuke.args4j.CmdLineException;
@@ -13,8 +19,13 @@ import org.slf4j.LoggerFactory;
 
 import com.github.adeshmukh.ps4j.Metric;
 import com.github.adeshmukh.ps4j.Ps4j;
+import com.github.adeshmukh.ps4j.Ps4jConfig;
 import com.github.adeshmukh.ps4j.Ps4jException;
 import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.SweepListener;
+import com.github.adeshmukh.ps4j.jmx.VmMBeanExporter;
+import com.github.adeshmukh.ps4j.recording.RecordingWriter;
+import com.google.common.io.Closeables;
 
 /**
  * @author adeshmukh
@@ -22,18 +33,69 @@ import com.github.adeshmukh.ps4j.Record;
 public class Main {
     private static final Logger log = LoggerFactory.getLogger(Main.class);
 
+    private static final long DEFAULT_RECORD_INTERVAL_MILLIS = 1000;
+
+    private static final PrintWriter WRITER = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out), 1 << 16));
+
+    private static final TableRenderer TABLE = new TableRenderer(WRITER, TableRenderer.DEFAULT_LOOK_AHEAD);
+
 	public static void main(String[] args) throws Exception {
         Ps4jConfigCli cfg = new Ps4jConfigCli();
         CmdLineParser clip = new CmdLineParser(cfg);
         clip.setUsageWidth(80);
 
+        Ps4j ps4j = null;
         try {
             clip.parseArgument(args);
-            Ps4j ps4j = new Ps4j(cfg.buildConfig());
+            Ps4jConfig config = cfg.buildConfig();
+            ps4j = new Ps4j(config);
 
             if (cfg.isHelp()) {
                 clip.printUsage(out);
                 displayOptions(ps4j.options());
+            } else if (cfg.isServe()) {
+                long interval = cfg.isWatch() ? cfg.getIntervalMillis() : DEFAULT_RECORD_INTERVAL_MILLIS;
+                final MetricsServer server = new MetricsServer(cfg.getListenAddress());
+                final VmMBeanExporter mbeans = new VmMBeanExporter();
+                try {
+                    err.println("Serving http://" + hostAndPort(server.getAddress()) + MetricsServer.PATH
+                            + " and MBeans " + VmMBeanExporter.DOMAIN + ":type=Vm,pid=*");
+                    ps4j.watch(interval, MILLISECONDS, cfg.getCount(), new SweepListener() {
+                        @Override
+                        public void sweepCompleted(int sweep, Iterable<Record> records) {
+                            server.sweepCompleted(sweep, records);
+                            mbeans.sweepCompleted(sweep, records);
+                        }
+                    });
+                } finally {
+                    mbeans.close();
+                    server.close();
+                }
+            } else if (cfg.getCommand() != null) {
+                if (cfg.getFile() == null) {
+                    throw new CmdLineException(clip, "No recording file specified");
+                }
+                if (cfg.isRecord()) {
+                    long interval = cfg.isWatch() ? cfg.getIntervalMillis() : DEFAULT_RECORD_INTERVAL_MILLIS;
+                    RecordingWriter writer = new RecordingWriter(cfg.getFile());
+                    try {
+                        ps4j.watch(interval, MILLISECONDS, cfg.getCount(), writer);
+                    } finally {
+                        Closeables.close(writer, true);
+                    }
+                } else if (cfg.isReplay()) {
+                    ps4j.replay(cfg.getFile(), cfg.getFromMillis(), cfg.getToMillis(), sweepListener(cfg, config));
+                } else {
+                    throw new CmdLineException(clip, "Unknown command \"" + cfg.getCommand() + "\"");
+                }
+            } else if (cfg.isWatch()) {
+                ps4j.watch(cfg.getIntervalMillis(), MILLISECONDS, cfg.getCount(), sweepListener(cfg, config));
+            } else if (cfg.getFormat() != OutputFormat.TABLE) {
+                ps4j.measure(encoder(cfg.getFormat(), config));
+            } else if (cfg.isStream()) {
+                StreamingDisplay display = new StreamingDisplay(new TableRenderer(WRITER, 1));
+                ps4j.measure(display);
+                display.close();
             } else {
                 display(ps4j.measure());
             }
@@ -52,9 +114,19 @@ public class Main {
             err.println("ERROR: " + pe.getMessage());
             clip.printUsage(err);
             exit(3);
+        } finally {
+            WRITER.flush();
+            if (ps4j != null) {
+                ps4j.close();
+            }
         }
 	}
 
+    private static String hostAndPort(InetSocketAddress address) {
+        String host = address.getAddress().isAnyLocalAddress() ? "localhost" : address.getHostName();
+        return host + ":" + address.getPort();
+    }
+
     private static void displayOptions(Collection<Metric<?>> metrics) {
         out.println("Output field options applicable for the specified Meters are:");
         for (Metric<?> metric : metrics) {
@@ -63,11 +135,33 @@ public class Main {
     }
 
     private static void display(Iterable<Record> records) {
-        for (String[] values : new DisplayRecords(records)) {
-            for (String value : values) {
-                out.print(value);
-            }
-            out.println();
+        TABLE.render(records);
+    }
+
+    private static SweepListener sweepListener(Ps4jConfigCli cfg, Ps4jConfig config) {
+        return cfg.getFormat() == OutputFormat.TABLE ? new DisplayingSweepListener() : encoder(cfg.getFormat(), config);
+    }
+
+    private static RecordEncoder encoder(OutputFormat format, Ps4jConfig config) {
+        switch (format) {
+        case CSV:
+            return new CsvEncoder(WRITER, config);
+        case NDJSON:
+            return new NdjsonEncoder(WRITER);
+        case BINARY:
+            return new BinaryEncoder(new BufferedOutputStream(out, 1 << 16));
+        default:
+            throw new IllegalArgumentException("No encoder for " + format);
+        }
+    }
+
+    /**
+     * Displays each sweep as a table, separated from the previous one by a blank line.
+     */
+    private static class DisplayingSweepListener implements SweepListener {
+        @Override
+        public void sweepCompleted(int sweep, Iterable<Record> records) {
+            display(records);
         }
     }
 }
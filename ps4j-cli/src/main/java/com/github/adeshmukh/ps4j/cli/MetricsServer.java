@@ -0,0 +1,87 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.SweepListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the latest sweep at <code>/metrics</code> in the Prometheus text format, see {@link PrometheusEncoder}.
+ * <p>
+ * Each completed sweep is encoded once and replaces the previous one; a scrape only writes out the bytes of the latest
+ * sweep and never measures the VMs itself. Until the first sweep completes the response is empty.
+ *
+ * @author adeshmukh
+ */
+class MetricsServer implements SweepListener, Closeable {
+
+    static final String PATH = "/metrics";
+
+    private final HttpServer server;
+    private final PrometheusEncoder encoder = new PrometheusEncoder();
+    private volatile byte[] snapshot = new byte[0];
+
+    /**
+     * Start serving on the address.
+     *
+     * @param address
+     * @throws IOException
+     *             if the address cannot be bound
+     */
+    MetricsServer(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @Override
+    public void sweepCompleted(int sweep, Iterable<Record> records) {
+        snapshot = encoder.encode(records);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        byte[] body = snapshot;
+        exchange.getResponseHeaders().set("Content-Type", PrometheusEncoder.CONTENT_TYPE);
+        if ("HEAD".equals(method)) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * @return the address the server is bound to
+     */
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
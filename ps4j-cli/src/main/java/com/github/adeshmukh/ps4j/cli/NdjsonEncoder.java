@@ -0,0 +1,66 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Record;
+
+/**
+ * Writes each Record as a JSON object on a line of its own (newline delimited JSON), with the members
+ * <code>sweep</code>, <code>timestamp</code>, <code>vmId</code> and <code>timedOut</code> followed by one member per
+ * measure. Values that are not finite numbers are written as <code>null</code>.
+ *
+ * @author adeshmukh
+ */
+class NdjsonEncoder extends TextRecordEncoder {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    NdjsonEncoder(Writer out) {
+        super(out);
+    }
+
+    @Override
+    void encode(int sweep, long timestamp, Record record) throws IOException {
+        out.write("{\"" + SWEEP + "\":");
+        writeLong(sweep);
+        out.write(",\"" + TIMESTAMP + "\":");
+        writeLong(timestamp);
+        out.write(",\"" + VM_ID + "\":");
+        writeLong(record.getVmId());
+        out.write(",\"" + TIMED_OUT + "\":");
+        out.write(record.isTimedOut() ? "true" : "false");
+        for (Measure<?> measure : record.getMeasures()) {
+            out.write(',');
+            writeString(measure.getMetric().getName());
+            out.write(':');
+            writeValue(measure);
+        }
+        out.write("}\n");
+    }
+
+    @Override
+    protected void writeNull() throws IOException {
+        out.write("null");
+    }
+
+    @Override
+    protected void writeString(String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write("\\u00");
+                out.write(HEX_DIGITS[c >> 4]);
+                out.write(HEX_DIGITS[c & 0xF]);
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
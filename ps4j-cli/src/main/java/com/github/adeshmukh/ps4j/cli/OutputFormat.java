@@ -0,0 +1,29 @@
+package com.github.adeshmukh.ps4j.cli;
+
+/**
+ * Formats in which the CLI writes Records.
+ *
+ * @author adeshmukh
+ */
+public enum OutputFormat {
+
+    /**
+     * Aligned columns of display values, e.g. <code>10k</code> or <code>1h2m3s</code>, for reading by people.
+     */
+    TABLE,
+
+    /**
+     * Comma separated raw values with a header row, see {@link CsvEncoder}.
+     */
+    CSV,
+
+    /**
+     * One JSON object of raw values per line, see {@link NdjsonEncoder}.
+     */
+    NDJSON,
+
+    /**
+     * Typed binary values, see {@link BinaryEncoder}.
+     */
+    BINARY
+}
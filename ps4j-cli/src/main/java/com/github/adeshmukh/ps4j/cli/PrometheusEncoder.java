@@ -0,0 +1,160 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.github.adeshmukh.ps4j.DoubleMeasure;
+import com.github.adeshmukh.ps4j.LongMeasure;
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.Record;
+
+/**
+ * Encodes the Records of a sweep in the Prometheus text exposition format (version 0.0.4). Each numeric metric is a
+ * gauge named <code>ps4j_</code> followed by the metric name, with one sample per VM labelled with the
+ * <code>pid</code>, <code>main_class</code> and <code>vm_name</code> of the VM. Values are raw, as in the other
+ * machine readable formats; non numeric measures are left out.
+ *
+ * @author adeshmukh
+ */
+class PrometheusEncoder {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    static final String MAIN_CLASS = "mainClass";
+    static final String VM_NAME = "vmName";
+
+    private static final String PREFIX = "ps4j_";
+
+    /**
+     * Doubles of smaller magnitude with no fraction are exact longs and are written without a decimal point.
+     */
+    private static final double MAX_EXACT_LONG = 9007199254740992d;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Samples of each metric, in order of first appearance, starting with the HELP and TYPE lines of the metric.
+     */
+    private final Map<String, StringBuilder> families = new LinkedHashMap<String, StringBuilder>();
+    private final StringBuilder labels = new StringBuilder();
+
+    /**
+     * @param records
+     * @return the encoded sweep
+     */
+    byte[] encode(Iterable<Record> records) {
+        for (Record record : records) {
+            writeLabels(record);
+            for (Measure<?> measure : record.getMeasures()) {
+                if (isNumeric(measure)) {
+                    StringBuilder family = family(measure.getMetric());
+                    family.append(PREFIX).append(sanitize(measure.getMetric().getName())).append(labels).append(' ');
+                    writeValue(family, measure);
+                    family.append('\n');
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (StringBuilder family : families.values()) {
+            sb.append(family);
+        }
+        families.clear();
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private StringBuilder family(Metric<?> metric) {
+        StringBuilder retval = families.get(metric.getName());
+        if (retval == null) {
+            retval = new StringBuilder();
+            String name = PREFIX + sanitize(metric.getName());
+            retval.append("# HELP ").append(name).append(' ');
+            escape(retval, String.valueOf(metric.getDescription()), false);
+            retval.append('\n');
+            retval.append("# TYPE ").append(name).append(" gauge\n");
+            families.put(metric.getName(), retval);
+        }
+        return retval;
+    }
+
+    private void writeLabels(Record record) {
+        labels.setLength(0);
+        labels.append("{pid=\"").append(record.getVmId()).append('"');
+        for (Measure<?> measure : record.getMeasures()) {
+            String name = measure.getMetric().getName();
+            if ((MAIN_CLASS.equals(name) || VM_NAME.equals(name)) && measure.getValue() != null) {
+                labels.append(',').append(MAIN_CLASS.equals(name) ? "main_class" : "vm_name").append("=\"");
+                escape(labels, measure.getValue().toString(), true);
+                labels.append('"');
+            }
+        }
+        labels.append('}');
+    }
+
+    private static boolean isNumeric(Measure<?> measure) {
+        if (measure instanceof LongMeasure || measure instanceof DoubleMeasure) {
+            return true;
+        }
+        Object value = measure.getValue();
+        return value instanceof Number || value instanceof Date;
+    }
+
+    private static void writeValue(StringBuilder sb, Measure<?> measure) {
+        if (measure instanceof LongMeasure) {
+            sb.append(((LongMeasure) measure).longValue());
+            return;
+        }
+        double d;
+        if (measure instanceof DoubleMeasure) {
+            d = ((DoubleMeasure) measure).doubleValue();
+        } else if (measure.getValue() instanceof Date) {
+            sb.append(((Date) measure.getValue()).getTime());
+            return;
+        } else {
+            d = ((Number) measure.getValue()).doubleValue();
+        }
+        if (Double.isNaN(d)) {
+            sb.append("NaN");
+        } else if (Double.isInfinite(d)) {
+            sb.append(d > 0 ? "+Inf" : "-Inf");
+        } else if (d == Math.rint(d) && Math.abs(d) < MAX_EXACT_LONG) {
+            sb.append((long) d);
+        } else {
+            sb.append(d);
+        }
+    }
+
+    /**
+     * Replace the characters not allowed in a metric name with <code>_</code>.
+     */
+    private static String sanitize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == ':'
+                    || c >= '0' && c <= '9' && i > 0;
+            sb.append(valid ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Escape backslashes and line feeds, and double quotes too within label values.
+     */
+    private static void escape(StringBuilder sb, String s, boolean quotes) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '"' && quotes) {
+                sb.append("\\\"");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
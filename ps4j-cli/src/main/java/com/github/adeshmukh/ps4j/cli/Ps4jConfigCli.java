@@ -2,23 +2,41 @@ package com.github.adeshmukh.ps4j.cli;
 
 import static java.lang.Class.forName;
 import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+import java.io.File;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 
 import com.github.adeshmukh.ps4j.Meter;
+import com.github.adeshmukh.ps4j.Metric;
 import com.github.adeshmukh.ps4j.Ps4jConfig;
+import com.github.adeshmukh.ps4j.Ps4jConfig.Backend;
+import com.github.adeshmukh.ps4j.Ps4jConfig.ThreadMode;
+import com.github.adeshmukh.ps4j.RecordOrdering;
+import com.github.adeshmukh.ps4j.RecordPredicate;
+import com.github.adeshmukh.ps4j.meter.OpenPortsMeter;
+import com.github.adeshmukh.ps4j.meter.ProcNetMeter;
 import com.google.common.base.Function;
-import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
 /**
  * @author adeshmukh
  */
 public class Ps4jConfigCli {
 
+    public static final int DEFAULT_METRICS_PORT = 9404;
+
     private static final Function<String, Meter> CONSTRUCTOR =
             new Function<String, Meter>() {
                 @Override
@@ -39,14 +57,81 @@ public class Ps4jConfigCli {
             , usage = "concurrency factor in the range (0,1), default=1. Controls the scaling of threads to the number of VMs available.")
     private double concurrencyFactor = 1;
 
+    @Option(name = "--max-processes"
+            , usage = "Maximum number of external commands (ps, lsof) run at the same time, default=2. Cheap meters always run first.")
+    private int maxExternalProcesses = Ps4jConfig.DEFAULT_MAX_EXTERNAL_PROCESSES;
+
+    @Option(name = "-b", aliases = "--backend"
+            , usage = "How VM counters are read, default=JVMSTAT. MAPPED memory maps the local hsperfdata files directly.")
+    private Backend backend = Backend.JVMSTAT;
+
+    @Option(name = "-t", aliases = "--threads"
+            , usage = "Kind of threads used to measure VMs, default=PLATFORM. VIRTUAL runs one virtual thread per VM and requires JDK21+.")
+    private ThreadMode threadMode = ThreadMode.PLATFORM;
+
     @Option(name = "-m", aliases = "--meters", handler = StringArrayOptionHandler.class
             , usage = "Names of one or more meters to be used. Defaults to using auto-discovery to find all available Meters.")
     private String[] meters;
 
     @Option(name = "-o", aliases = "--fields", handler = StringArrayOptionHandler.class
-            , usage = "List of fields to display in output, defaults to all. The specified fields are displayed only if the corresponding Meter is also enabled.")
+            , usage = "List of fields to display in output, defaults to all. The specified fields are displayed only if the corresponding Meter is also enabled. The fields read from /proc (cpuTicks, startTime, cpuPct) assume 100 clock ticks per second rather than querying it.")
     private String[] outputFields;
 
+    @Option(name = "-s", aliases = "--stream"
+            , usage = "Print each row as soon as its VM has been measured, instead of waiting for all VMs to align the columns.")
+    private boolean stream = false;
+
+    @Option(name = "-f", aliases = "--format"
+            , usage = "Output format, default=TABLE. CSV, NDJSON and BINARY write the raw values of each record as soon as it is measured.")
+    private OutputFormat format = OutputFormat.TABLE;
+
+    @Option(name = "--sort", handler = RecordOrderingOptionHandler.class
+            , usage = "Sort the rows of each sweep by the comma separated fields, prefixed with - for descending order. The rows are written once the sweep completes.")
+    private RecordOrdering ordering;
+
+    @Option(name = "--where", handler = RecordPredicateOptionHandler.class
+            , usage = "Display only the rows that meet the condition, e.g. 'heapUse > 2g && vmName ~ Server'. Operators: > >= < <= == != ~ (regex) !~ && || ! and parentheses. Meters that run external commands only run for the VMs that can still match.")
+    private RecordPredicate predicate;
+
+    @Option(name = "--top"
+            , usage = "Display at most this many rows per sweep, the first ones in sort order if --sort is given, default=0 (all).")
+    private int top;
+
+    @Option(name = "-i", aliases = "--interval", handler = DurationOptionHandler.class
+            , usage = "Sample continuously with the given interval between sweeps, e.g. 500ms, 1s, 2m. VMs stay attached between sweeps, and the rates (gcTimePct, cpuPct, ...) are reported from the second sweep on.")
+    private long intervalMillis;
+
+    @Option(name = "-n", aliases = "--count"
+            , usage = "Number of sweeps to display when sampling continuously, default=0 (until interrupted).")
+    private int count;
+
+    @Option(name = "--timeout", handler = DurationOptionHandler.class
+            , usage = "Time allowed for each sweep, e.g. 2s. VMs not measured in time are shown with the fields collected until then.")
+    private long sweepTimeoutMillis;
+
+    @Option(name = "--vm-timeout", handler = DurationOptionHandler.class
+            , usage = "Time allowed for measuring each VM, e.g. 500ms.")
+    private long vmTimeoutMillis;
+
+    @Option(name = "--from", handler = TimestampOptionHandler.class
+            , usage = "Replay only the sweeps recorded at or after this time, e.g. 2013-05-01T14:30")
+    private long fromMillis = Long.MIN_VALUE;
+
+    @Option(name = "--to", handler = TimestampOptionHandler.class
+            , usage = "Replay only the sweeps recorded at or before this time, e.g. 2013-05-01T14:45")
+    private long toMillis = Long.MAX_VALUE;
+
+    @Option(name = "--listen", handler = ListenAddressOptionHandler.class
+            , usage = "Address at which serve exposes the latest sweep, default=9404 (all interfaces).")
+    private InetSocketAddress listenAddress = new InetSocketAddress(DEFAULT_METRICS_PORT);
+
+    @Argument(index = 0, metaVar = "record|replay|serve"
+            , usage = "record: sample continuously (every 1s unless -i is given) and append the sweeps to FILE. replay: display the sweeps recorded in FILE. serve: sample continuously (every 1s unless -i is given) and serve the latest sweep at http://HOST:PORT/metrics in the Prometheus text format and as one MBean per VM.")
+    private String command;
+
+    @Argument(index = 1, metaVar = "FILE", usage = "Recording file, for record and replay")
+    private File file;
+
     @Option(name = "-h", aliases = { "--help", "-?" }, usage = "Help. Specify -m <CSV list of Meters> to get a list of available fields")
     private boolean help = false;
 
@@ -54,22 +139,56 @@ public class Ps4jConfigCli {
         Ps4jConfig config = new Ps4jConfig();
 
         config.setConcurrencyFactor(concurrencyFactor);
+        config.setMaxExternalProcesses(maxExternalProcesses);
+        config.setBackend(backend);
+        config.setThreadMode(threadMode);
+        config.setSweepTimeout(sweepTimeoutMillis, MILLISECONDS);
+        config.setVmTimeout(vmTimeoutMillis, MILLISECONDS);
 
         if (meters == null) {
             config.setMeters(discoverMeters());
-        } else { // Auto discover all meters using ServiceLoader
-            config.setMeters(FluentIterable.from(asList(meters)).transform(CONSTRUCTOR));
+        } else { // instantiate the Meters once, so that they keep their state across sweeps
+            config.setMeters(ImmutableList.copyOf(Iterables.transform(asList(meters), CONSTRUCTOR)));
         }
 
         if (outputFields != null) {
-            config.setMetricNames(Arrays.asList(outputFields));
+            List<String> metricNames = new ArrayList<String>(Arrays.asList(outputFields));
+            if (isServe()) {
+                addSupported(config.getMeters(), PrometheusEncoder.MAIN_CLASS, metricNames);
+                addSupported(config.getMeters(), PrometheusEncoder.VM_NAME, metricNames);
+            }
+            config.setMetricNames(metricNames);
         }
+        config.setOrdering(ordering);
+        config.setPredicate(predicate);
+        config.setTop(top);
         return config;
     }
 
+    /**
+     * Add the metric to the names if it is missing and one of the Meters supports it.
+     */
+    private static void addSupported(Iterable<? extends Meter> meters, String metricName, List<String> metricNames) {
+        if (metricNames.contains(metricName)) {
+            return;
+        }
+        for (Meter meter : meters) {
+            for (Metric<?> metric : meter.supportedMetrics()) {
+                if (metricName.equals(metric.getName())) {
+                    metricNames.add(metricName);
+                    return;
+                }
+            }
+        }
+    }
+
     /**
      * Use reflection to see if ServiceLoader is available (ServiceLoader requires JDK1.6+).
      * If ServiceLoader is not available, then the Meters cannot be autodiscovered.
+     * <p>
+     * A Meter is left out if all its metrics are supported by the Meters listed before it, e.g. {@link OpenPortsMeter}
+     * on Linux where {@link ProcNetMeter} reports the listening ports, or a Meter that supports no metrics on this
+     * system.
      *
      * @return
      */
@@ -84,10 +203,76 @@ public class Ps4jConfigCli {
         } catch (Exception e) {
             throw new MeterLoadingException(e);
         }
-        return meters;
+        List<Meter> retval = new ArrayList<Meter>();
+        Set<String> metricNames = new HashSet<String>();
+        for (Meter meter : meters) {
+            boolean hasOwnMetric = false;
+            for (Metric<?> metric : meter.supportedMetrics()) {
+                hasOwnMetric |= metricNames.add(metric.getName());
+            }
+            if (hasOwnMetric) {
+                retval.add(meter);
+            }
+        }
+        return retval;
     }
 
     public boolean isHelp() {
         return help;
     }
+
+    public boolean isStream() {
+        return stream;
+    }
+
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    public boolean isWatch() {
+        return intervalMillis > 0;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isRecord() {
+        return "record".equals(command);
+    }
+
+    public boolean isReplay() {
+        return "replay".equals(command);
+    }
+
+    public boolean isServe() {
+        return "serve".equals(command);
+    }
+
+    public InetSocketAddress getListenAddress() {
+        return listenAddress;
+    }
+
+    /**
+     * @return the subcommand, or null if none was given
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    public long getToMillis() {
+        return toMillis;
+    }
 }
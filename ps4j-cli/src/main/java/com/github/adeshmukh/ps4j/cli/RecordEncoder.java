@@ -0,0 +1,72 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.io.IOException;
+
+import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.RecordBatch;
+import com.github.adeshmukh.ps4j.RecordListener;
+import com.github.adeshmukh.ps4j.SweepListener;
+import com.google.common.base.Throwables;
+
+/**
+ * Writes the raw, unscaled values of each Record in a machine readable format as soon as it is received, either
+ * alone as a {@link RecordListener} or with the rest of its sweep as a {@link SweepListener}.
+ * <p>
+ * Each Record is written with the sequence number and time of its sweep, the id of its VM and whether it timed out.
+ * Errors writing the output are rethrown unchecked.
+ *
+ * @author adeshmukh
+ */
+abstract class RecordEncoder implements RecordListener, SweepListener {
+
+    static final String SWEEP = "sweep";
+    static final String TIMESTAMP = "timestamp";
+    static final String VM_ID = "vmId";
+    static final String TIMED_OUT = "timedOut";
+
+    private int sweep = 1;
+    private long timestamp = System.currentTimeMillis();
+
+    /**
+     * Set the sweep of the Records subsequently passed to {@link #recordMeasured(Record)}.
+     *
+     * @param sweep
+     * @param timestamp
+     *            millis since the epoch
+     */
+    void beginSweep(int sweep, long timestamp) {
+        this.sweep = sweep;
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public void recordMeasured(Record record) {
+        try {
+            encode(sweep, timestamp, record);
+            flush();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Write the Records of the sweep, with the time of the {@link RecordBatch} if they are one.
+     */
+    @Override
+    public void sweepCompleted(int sweep, Iterable<Record> records) {
+        beginSweep(sweep, records instanceof RecordBatch
+                ? ((RecordBatch) records).getTimestamp() : System.currentTimeMillis());
+        try {
+            for (Record record : records) {
+                encode(sweep, timestamp, record);
+            }
+            flush();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    abstract void encode(int sweep, long timestamp, Record record) throws IOException;
+
+    abstract void flush() throws IOException;
+}
@@ -0,0 +1,35 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.OptionDef;
+import org.kohsuke.args4j.spi.OneArgumentOptionHandler;
+import org.kohsuke.args4j.spi.Setter;
+
+import com.github.adeshmukh.ps4j.RecordOrdering;
+
+/**
+ * Parses a sort specification such as <code>heapUse,-totGcTime</code> into a {@link RecordOrdering}.
+ *
+ * @author adeshmukh
+ */
+public class RecordOrderingOptionHandler extends OneArgumentOptionHandler<RecordOrdering> {
+
+    public RecordOrderingOptionHandler(CmdLineParser parser, OptionDef option, Setter<? super RecordOrdering> setter) {
+        super(parser, option, setter);
+    }
+
+    @Override
+    protected RecordOrdering parse(String argument) throws CmdLineException {
+        try {
+            return RecordOrdering.parse(argument);
+        } catch (IllegalArgumentException e) {
+            throw new CmdLineException(owner, "Invalid sort \"" + argument + "\": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getDefaultMetaVariable() {
+        return "heapUse,-totGcTime";
+    }
+}
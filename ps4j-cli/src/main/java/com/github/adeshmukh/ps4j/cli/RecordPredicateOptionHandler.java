@@ -0,0 +1,35 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.OptionDef;
+import org.kohsuke.args4j.spi.OneArgumentOptionHandler;
+import org.kohsuke.args4j.spi.Setter;
+
+import com.github.adeshmukh.ps4j.RecordPredicate;
+
+/**
+ * Parses a condition such as <code>heapUse &gt; 2g &amp;&amp; vmName ~ Server</code> into a {@link RecordPredicate}.
+ *
+ * @author adeshmukh
+ */
+public class RecordPredicateOptionHandler extends OneArgumentOptionHandler<RecordPredicate> {
+
+    public RecordPredicateOptionHandler(CmdLineParser parser, OptionDef option, Setter<? super RecordPredicate> setter) {
+        super(parser, option, setter);
+    }
+
+    @Override
+    protected RecordPredicate parse(String argument) throws CmdLineException {
+        try {
+            return RecordPredicate.parse(argument);
+        } catch (IllegalArgumentException e) {
+            throw new CmdLineException(owner, "Invalid condition \"" + argument + "\": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getDefaultMetaVariable() {
+        return "CONDITION";
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.util.Map;
+
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.RecordListener;
+
+/**
+ * Prints each Record as soon as it is measured. Unlike a complete table the column widths cannot be computed from all
+ * the rows up front; they are taken from the header and the first row, and widened as wider values arrive. Measures
+ * missing from a Record, e.g. because its VM timed out, are displayed as "-".
+ * <p>
+ * Call {@link #close()} once the last Record has been received.
+ *
+ * @author adeshmukh
+ */
+class StreamingDisplay implements RecordListener {
+
+    private final TableRenderer renderer;
+    private String[] orderedKeys;
+
+    StreamingDisplay(TableRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void recordMeasured(Record record) {
+        if (orderedKeys == null) {
+            orderedKeys = new String[record.getMeasures().size()];
+            int i = 0;
+            for (Measure<?> measure : record.getMeasures()) {
+                orderedKeys[i++] = measure.getMetric().getName();
+            }
+            renderer.beginTable(orderedKeys, orderedKeys.length);
+        }
+        Map<String, Measure<?>> measures = newHashMap();
+        for (Measure<?> measure : record.getMeasures()) {
+            measures.put(measure.getMetric().getName(), measure);
+        }
+        renderer.beginRow();
+        for (String key : orderedKeys) {
+            renderer.cell(measures.get(key));
+        }
+        renderer.endRow();
+        renderer.flush();
+    }
+
+    void close() {
+        if (orderedKeys != null) {
+            renderer.endTable();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Math.max;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.RecordBatch;
+
+/**
+ * Renders Records as a table with right-aligned columns, writing the cells and their padding straight to a single
+ * writer.
+ * <p>
+ * The column widths are taken from the header and a bounded look-ahead window of rows, which are held until the
+ * window is full or the table ends. Later rows are written as they arrive and widen a column if a value does not fit,
+ * so a table of any length is rendered without holding more than the window. Tables after the first are separated
+ * by a blank line. Measures missing from a row, e.g. because its VM timed out, are displayed as "-".
+ * <p>
+ * The writer is flushed at the end of each table and by {@link #flush()}; it is expected to be buffered.
+ *
+ * @author adeshmukh
+ */
+class TableRenderer {
+
+    static final int DEFAULT_LOOK_AHEAD = 256;
+
+    private static final char PADCHAR = ' ';
+
+    private static final String MISSING_VALUE = "-";
+
+    private final PrintWriter out;
+    private final int lookAhead;
+
+    private boolean first = true;
+    private int numCols;
+    private String[] keys;
+    private int[] colWidths;
+    private String[][] window;
+    private int numBuffered;
+    private int col = -1;
+    private boolean headerWritten;
+
+    /**
+     * @param out
+     * @param lookAhead
+     *            number of rows used to size the columns, at least 1
+     */
+    TableRenderer(PrintWriter out, int lookAhead) {
+        checkArgument(lookAhead > 0, "lookAhead must be positive");
+        this.out = out;
+        this.lookAhead = lookAhead;
+    }
+
+    /**
+     * Render the Records as a complete table of the columns present in the first Record that did not time out.
+     *
+     * @param records
+     */
+    void render(Iterable<Record> records) {
+        RecordBatch batch = RecordBatch.copyOf(records);
+        if (batch.isEmpty()) {
+            return;
+        }
+        int canonicalRow = canonicalRow(batch);
+        List<Metric<?>> metrics = batch.getMetrics();
+        int[] columns = new int[metrics.size()];
+        String[] names = new String[metrics.size()];
+        int n = 0;
+        for (int column = 0; column < columns.length; column++) {
+            if (batch.isPresent(canonicalRow, column)) {
+                columns[n] = column;
+                names[n++] = metrics.get(column).getName();
+            }
+        }
+
+        beginTable(names, n);
+        for (int row = 0; row < batch.size(); row++) {
+            beginRow();
+            for (int i = 0; i < n; i++) {
+                cell(batch.getMeasure(row, columns[i]));
+            }
+            endRow();
+        }
+        endTable();
+    }
+
+    /**
+     * Records of VMs that missed their deadline may lack some measures, so prefer a record that is complete.
+     */
+    private static int canonicalRow(RecordBatch batch) {
+        for (int row = 0; row < batch.size(); row++) {
+            if (!batch.isTimedOut(row)) {
+                return row;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Start a table of the first <code>numCols</code> columns named by <code>keys</code>.
+     *
+     * @param keys
+     * @param numCols
+     */
+    void beginTable(String[] keys, int numCols) {
+        checkState(this.keys == null, "table already started");
+        this.keys = keys;
+        this.numCols = numCols;
+        if (colWidths == null || colWidths.length < numCols) {
+            colWidths = new int[numCols];
+        }
+        for (int i = 0; i < numCols; i++) {
+            colWidths[i] = keys[i].length();
+        }
+        if (window == null || window[0].length < numCols) {
+            window = new String[lookAhead][numCols];
+        }
+        numBuffered = 0;
+        headerWritten = false;
+        if (!first) {
+            out.println();
+        }
+        first = false;
+    }
+
+    void beginRow() {
+        checkState(keys != null && col < 0, "no table started or row not ended");
+        col = 0;
+    }
+
+    void cell(Measure<?> measure) {
+        cell(measure == null ? MISSING_VALUE : measure.getDisplayValue());
+    }
+
+    void cell(String value) {
+        checkState(col >= 0 && col < numCols, "no row started or too many cells");
+        colWidths[col] = max(colWidths[col], value.length());
+        if (headerWritten) {
+            padStart(value, colWidths[col] + 1);
+        } else {
+            window[numBuffered][col] = value;
+        }
+        col++;
+    }
+
+    void endRow() {
+        checkState(col >= 0, "no row started");
+        for (; col < numCols; col++) {
+            cell(MISSING_VALUE);
+        }
+        col = -1;
+        if (headerWritten) {
+            out.println();
+        } else if (++numBuffered == lookAhead) {
+            writeWindow();
+        }
+    }
+
+    void endTable() {
+        checkState(col < 0, "row not ended");
+        if (keys != null && !headerWritten) {
+            writeWindow();
+        }
+        keys = null;
+        out.flush();
+    }
+
+    void flush() {
+        out.flush();
+    }
+
+    private void writeWindow() {
+        for (int i = 0; i < numCols; i++) {
+            padAround(keys[i], colWidths[i] + 1);
+        }
+        out.println();
+        for (int row = 0; row < numBuffered; row++) {
+            String[] values = window[row];
+            for (int i = 0; i < numCols; i++) {
+                padStart(values[i], colWidths[i] + 1);
+                values[i] = null;
+            }
+            out.println();
+        }
+        numBuffered = 0;
+        headerWritten = true;
+    }
+
+    private void padStart(String s, int minLength) {
+        pad(minLength - s.length());
+        out.write(s);
+    }
+
+    private void padAround(String s, int minLength) {
+        int rpad = max(0, (minLength - s.length()) / 2);
+        pad(minLength - s.length() - rpad);
+        out.write(s);
+        pad(rpad);
+    }
+
+    private void pad(int n) {
+        for (int i = 0; i < n; i++) {
+            out.write(PADCHAR);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+import com.github.adeshmukh.ps4j.DoubleMeasure;
+import com.github.adeshmukh.ps4j.LongMeasure;
+import com.github.adeshmukh.ps4j.Measure;
+
+/**
+ * Base class for the text formats. Values are written by type: integers as digits, other numbers as the shortest
+ * decimal that parses back to the same double, dates as millis since the epoch, and anything else as a string.
+ * Integers are written from a reusable buffer rather than through a String.
+ *
+ * @author adeshmukh
+ */
+abstract class TextRecordEncoder extends RecordEncoder {
+
+    /**
+     * Doubles of smaller magnitude with no fraction are exact longs and are written without a decimal point.
+     */
+    private static final double MAX_EXACT_LONG = 9007199254740992d;
+
+    protected final Writer out;
+    private final char[] digits = new char[20];
+
+    TextRecordEncoder(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @param measure
+     *            may be null
+     * @throws IOException
+     */
+    protected void writeValue(Measure<?> measure) throws IOException {
+        if (measure instanceof LongMeasure) {
+            writeLong(((LongMeasure) measure).longValue());
+            return;
+        }
+        if (measure instanceof DoubleMeasure) {
+            writeDouble(((DoubleMeasure) measure).doubleValue());
+            return;
+        }
+        Object value = measure == null ? null : measure.getValue();
+        if (value == null) {
+            writeNull();
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Date) {
+            writeLong(((Date) value).getTime());
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    protected void writeLong(long v) throws IOException {
+        if (v == Long.MIN_VALUE) {
+            out.write(String.valueOf(v));
+            return;
+        }
+        int pos = digits.length;
+        long abs = Math.abs(v);
+        do {
+            digits[--pos] = (char) ('0' + abs % 10);
+            abs /= 10;
+        } while (abs != 0);
+        if (v < 0) {
+            digits[--pos] = '-';
+        }
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    protected void writeDouble(double d) throws IOException {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            writeNull();
+        } else if (d == Math.rint(d) && Math.abs(d) < MAX_EXACT_LONG) {
+            writeLong((long) d);
+        } else {
+            out.write(Double.toString(d));
+        }
+    }
+
+    protected abstract void writeNull() throws IOException;
+
+    protected abstract void writeString(String s) throws IOException;
+
+    @Override
+    void flush() throws IOException {
+        out.flush();
+    }
+}
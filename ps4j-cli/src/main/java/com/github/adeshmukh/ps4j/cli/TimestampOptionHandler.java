@@ -0,0 +1,49 @@
+package com.github.adeshmukh.ps4j.cli;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.OptionDef;
+import org.kohsuke.args4j.spi.OneArgumentOptionHandler;
+import org.kohsuke.args4j.spi.Setter;
+
+/**
+ * Parses a local date and time such as <code>2013-05-01T14:30</code>, <code>2013-05-01T14:30:15</code> or
+ * <code>2013-05-01</code>, or a number of milliseconds since the epoch, into milliseconds since the epoch.
+ *
+ * @author adeshmukh
+ */
+public class TimestampOptionHandler extends OneArgumentOptionHandler<Long> {
+
+    private static final String[] PATTERNS = { "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd" };
+
+    public TimestampOptionHandler(CmdLineParser parser, OptionDef option, Setter<? super Long> setter) {
+        super(parser, option, setter);
+    }
+
+    @Override
+    protected Long parse(String argument) throws CmdLineException {
+        String s = argument.trim();
+        if (s.matches("\\d+")) {
+            return Long.parseLong(s);
+        }
+        for (String pattern : PATTERNS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(s, position);
+            if (date != null && position.getIndex() == s.length()) {
+                return date.getTime();
+            }
+        }
+        throw new CmdLineException(owner, "Invalid time \"" + argument + "\", expected e.g. 2013-05-01T14:30");
+    }
+
+    @Override
+    public String getDefaultMetaVariable() {
+        return "TIME";
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.adeshmukh.ps4j;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A {@link BatchMeter} whose measurement completes asynchronously, e.g. when the external command it runs exits, so
+ * that no thread is held while waiting for it.
+ * <p>
+ * Within a sweep, Ps4j calls {@link #measureDataAsync(SweepContext)} instead of
+ * {@link #measureData(SweepContext)}. {@link #open(SweepContext)} and {@link #close(SweepContext)} are called as for
+ * any BatchMeter.
+ *
+ * @author adeshmukh
+ */
+public interface AsyncBatchMeter extends BatchMeter {
+
+    /**
+     * Start measuring the requested metrics for all VMs of the sweep. Must not block. The future should complete by
+     * the {@link SweepContext#getDeadline() deadline}; cancelling it abandons the measurement.
+     *
+     * @param context
+     * @return future of the measures keyed by the local vm id; VMs without measures may be left out
+     */
+    ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> measureDataAsync(SweepContext context);
+}
@@ -0,0 +1,44 @@
+package com.github.adeshmukh.ps4j;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link Meter} that measures all the VMs of a sweep at once, e.g. with a single invocation of an external command
+ * for all of them rather than one per VM.
+ * <p>
+ * For each sweep, Ps4j calls {@link #open(SweepContext)} and {@link #measureData(SweepContext)} once, concurrently with
+ * the other Meters, and merges the measures of each VM into its Record in the order of the configured Meters. Once all
+ * the Records of the sweep have been delivered, {@link #close(SweepContext)} is called, even if the measurement failed
+ * or was cancelled at the sweep deadline. The per-VM {@link #measureData(sun.jvmstat.monitor.MonitoredVm)} is only used
+ * when the Meter is run outside of a sweep.
+ *
+ * @author adeshmukh
+ */
+public interface BatchMeter extends Meter {
+
+    /**
+     * Prepare for the sweep.
+     *
+     * @param context
+     * @throws Exception
+     */
+    void open(SweepContext context) throws Exception;
+
+    /**
+     * Measure the requested metrics for all VMs of the sweep. The measurement should give up once the
+     * {@link SweepContext#getDeadline() deadline} expires.
+     *
+     * @param context
+     * @return measures keyed by the local vm id; VMs without measures may be left out
+     * @throws Exception
+     */
+    Map<Integer, Collection<? extends Measure<?>>> measureData(SweepContext context) throws Exception;
+
+    /**
+     * Release the resources held for the sweep.
+     *
+     * @param context
+     */
+    void close(SweepContext context);
+}
@@ -0,0 +1,19 @@
+package com.github.adeshmukh.ps4j;
+
+/**
+ * A {@link Meter} that declares the cost of its measurements, so that Ps4j can schedule it around the other Meters.
+ *
+ * @author adeshmukh
+ */
+public interface CostedMeter extends Meter {
+
+    MeterCost getCost();
+
+    /**
+     * Maximum number of measurements of this Meter that may run at the same time for a Ps4j instance, counting a
+     * {@link BatchMeter} measurement of a whole sweep as one.
+     *
+     * @return the limit, or 0 for no limit other than that of the cost class
+     */
+    int getMaxConcurrency();
+}
@@ -0,0 +1,110 @@
+package com.github.adeshmukh.ps4j;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a measurement must complete.
+ * <p>
+ * While a {@link Ps4jTask} runs its Meters, the deadline for the VM being measured is available to the Meters from
+ * {@link #current()}, so that Meters which block (e.g. on a child process) can give up in time.
+ *
+ * @author adeshmukh
+ */
+public final class Deadline {
+
+    /**
+     * Special instance for a deadline that never expires.
+     */
+    public static final Deadline NONE = new Deadline(0, false);
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>() {
+        @Override
+        protected Deadline initialValue() {
+            return NONE;
+        }
+    };
+
+    private final long nanoTime;
+    private final boolean bounded;
+
+    private Deadline(long nanoTime, boolean bounded) {
+        this.nanoTime = nanoTime;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param timeout
+     *            a value &lt;= 0 implies no deadline
+     * @param unit
+     * @return
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            return NONE;
+        }
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    /**
+     * The deadline of the measurement being run by the calling thread, or {@link #NONE}.
+     *
+     * @return
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    static void setCurrent(Deadline deadline) {
+        CURRENT.set(deadline);
+    }
+
+    static void clearCurrent() {
+        CURRENT.remove();
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public boolean isExpired() {
+        return bounded && nanoTime - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Time left until the deadline, 0 if it has expired, or {@link Long#MAX_VALUE} if it is not bounded.
+     *
+     * @param unit
+     * @return
+     */
+    public long remaining(TimeUnit unit) {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(Math.max(0, nanoTime - System.nanoTime()), NANOSECONDS);
+    }
+
+    /**
+     * Return whichever of this and the other deadline expires first.
+     *
+     * @param other
+     * @return
+     */
+    public Deadline min(Deadline other) {
+        if (!other.bounded) {
+            return this;
+        }
+        if (!bounded) {
+            return other;
+        }
+        return other.nanoTime - nanoTime < 0 ? other : this;
+    }
+
+    @Override
+    public String toString() {
+        return bounded ? remaining(TimeUnit.MILLISECONDS) + "ms" : "none";
+    }
+}
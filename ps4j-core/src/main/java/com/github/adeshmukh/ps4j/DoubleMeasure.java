@@ -0,0 +1,14 @@
+package com.github.adeshmukh.ps4j;
+
+/**
+ * A {@link Measure} of a double value that is stored unboxed, see {@link DoubleMetric}.
+ *
+ * @author adeshmukh
+ */
+public interface DoubleMeasure extends Measure<Double> {
+
+    /**
+     * @return the value, without boxing it as {@link #getValue()} does
+     */
+    double doubleValue();
+}
@@ -0,0 +1,18 @@
+package com.github.adeshmukh.ps4j;
+
+/**
+ * A {@link Metric} of double values that can create its {@link Measure}s from a primitive, so that Meters sampling at
+ * a high rate do not allocate a {@link Double} for every value.
+ *
+ * @author adeshmukh
+ */
+public interface DoubleMetric extends Metric<Double> {
+
+    /**
+     * Factory method for creating new Measures of this Metric without boxing the value.
+     *
+     * @param val
+     * @return
+     */
+    DoubleMeasure newMeasure(double val);
+}
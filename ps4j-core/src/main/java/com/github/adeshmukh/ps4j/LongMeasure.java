@@ -0,0 +1,14 @@
+package com.github.adeshmukh.ps4j;
+
+/**
+ * A {@link Measure} of a long value that is stored unboxed, see {@link LongMetric}.
+ *
+ * @author adeshmukh
+ */
+public interface LongMeasure extends Measure<Long> {
+
+    /**
+     * @return the value, without boxing it as {@link #getValue()} does
+     */
+    long longValue();
+}
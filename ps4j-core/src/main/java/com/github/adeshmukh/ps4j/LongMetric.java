@@ -0,0 +1,18 @@
+package com.github.adeshmukh.ps4j;
+
+/**
+ * A {@link Metric} of long values that can create its {@link Measure}s from a primitive, so that Meters sampling at a
+ * high rate do not allocate a {@link Long} for every value.
+ *
+ * @author adeshmukh
+ */
+public interface LongMetric extends Metric<Long> {
+
+    /**
+     * Factory method for creating new Measures of this Metric without boxing the value.
+     *
+     * @param val
+     * @return
+     */
+    LongMeasure newMeasure(long val);
+}
@@ -0,0 +1,40 @@
+package com.github.adeshmukh.ps4j;
+
+/**
+ * Cost class of a {@link Meter}, used by Ps4j to run the cheap Meters of a VM first and to bound the concurrency of
+ * the expensive ones.
+ *
+ * @author adeshmukh
+ */
+public enum MeterCost {
+
+    /**
+     * Reads counters already mapped into this process, e.g. the hsperf instrumentation of the VM.
+     */
+    MEMORY,
+
+    /**
+     * Reads a few files per VM, e.g. from <code>/proc</code>.
+     */
+    FILE,
+
+    /**
+     * Runs an external command such as <code>ps</code> or <code>lsof</code>. Such Meters run in a separate pool of
+     * threads bounded by {@link Ps4jConfig#getMaxExternalProcesses()}.
+     */
+    PROCESS;
+
+    /**
+     * The declared cost of the Meter. Meters that do not declare one are taken to be {@link #PROCESS} if they are
+     * {@link BatchMeter}s, and {@link #FILE} otherwise.
+     *
+     * @param meter
+     * @return
+     */
+    public static MeterCost of(Meter meter) {
+        if (meter instanceof CostedMeter) {
+            return ((CostedMeter) meter).getCost();
+        }
+        return meter instanceof BatchMeter ? PROCESS : FILE;
+    }
+}
@@ -0,0 +1,330 @@
+package com.github.adeshmukh.ps4j;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the measurements of Meters according to their {@link MeterCost}. Measurements of {@link MeterCost#PROCESS}
+ * Meters are queued to a pool with a fixed number of threads, so that a sweep of many VMs cannot start more external
+ * commands at once than the pool has threads. Meters that declare a concurrency limit additionally hold one of their
+ * permits while measuring.
+ * <p>
+ * Asynchronous measurements, see {@link AsyncBatchMeter}, hold no thread while running. They are bounded by permits
+ * of their own, the same number as the threads of the pool, and a measurement waiting for a permit is queued and
+ * started when a running one completes.
+ *
+ * @author adeshmukh
+ */
+final class MeterScheduler {
+
+    private static final long KEEP_ALIVE_SECS = 60;
+
+    private static final Comparator<Meter> COST_COMPARATOR = new Comparator<Meter>() {
+        @Override
+        public int compare(Meter m0, Meter m1) {
+            return MeterCost.of(m0).compareTo(MeterCost.of(m1));
+        }
+    };
+
+    private final ThreadPoolExecutor external;
+    private final ConcurrentMap<Meter, Semaphore> permits = new ConcurrentHashMap<Meter, Semaphore>();
+    private final AsyncPermits externalAsync;
+    private final ConcurrentMap<Meter, AsyncPermits> asyncPermits = new ConcurrentHashMap<Meter, AsyncPermits>();
+
+    /**
+     * The asynchronous counterpart of a Semaphore: a start waiting for a permit is queued rather than blocking a
+     * thread, and run by the release that frees one.
+     */
+    private static final class AsyncPermits {
+        private final Queue<Runnable> waiting = new ArrayDeque<Runnable>();
+        private int available;
+
+        AsyncPermits(int permits) {
+            this.available = permits;
+        }
+
+        /**
+         * Run the start once a permit is available. The start must eventually {@link #release()} the permit.
+         */
+        void run(Runnable start) {
+            synchronized (this) {
+                if (available == 0) {
+                    waiting.add(start);
+                    return;
+                }
+                available--;
+            }
+            start.run();
+        }
+
+        void release() {
+            Runnable next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    available++;
+                }
+            }
+            if (next != null) {
+                next.run();
+            }
+        }
+    }
+
+    /**
+     * @param maxExternalProcesses
+     *            number of threads running {@link MeterCost#PROCESS} Meters
+     */
+    MeterScheduler(int maxExternalProcesses) {
+        external = new ThreadPoolExecutor(maxExternalProcesses, maxExternalProcesses, KEEP_ALIVE_SECS, SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ps4j-ext-%d").build());
+        external.allowCoreThreadTimeOut(true);
+        externalAsync = new AsyncPermits(maxExternalProcesses);
+    }
+
+    /**
+     * @param meters
+     * @return the Meters in increasing order of cost, keeping the configured order within a cost class
+     */
+    static List<Meter> byCost(Iterable<? extends Meter> meters) {
+        List<Meter> retval = new ArrayList<Meter>();
+        for (Meter meter : meters) {
+            retval.add(meter);
+        }
+        Collections.sort(retval, COST_COMPARATOR);
+        return retval;
+    }
+
+    /**
+     * Submit a measurement of the Meter: to the pool of external processes if the Meter is expensive, otherwise to the
+     * executor.
+     *
+     * @param meter
+     * @param task
+     * @param executor
+     * @return
+     */
+    <T> ListenableFuture<T> submit(Meter meter, Callable<T> task, ExecutorService executor) {
+        ListenableFutureTask<T> retval = ListenableFutureTask.create(limited(meter, task));
+        (MeterCost.of(meter) == MeterCost.PROCESS ? external : executor).execute(retval);
+        return retval;
+    }
+
+    /**
+     * Run a measurement of the Meter for the calling task: in the pool of external processes if the Meter is
+     * expensive, otherwise in the calling thread.
+     *
+     * @param meter
+     * @param task
+     * @param deadline
+     * @return the result, or null if the deadline expired first
+     * @throws InterruptedException
+     */
+    <T> T call(Meter meter, Callable<T> task, Deadline deadline) throws InterruptedException {
+        if (MeterCost.of(meter) != MeterCost.PROCESS) {
+            Semaphore semaphore = semaphore(meter);
+            if (semaphore == null) {
+                return callUnchecked(task);
+            }
+            if (!acquire(semaphore, deadline)) {
+                return null;
+            }
+            try {
+                return callUnchecked(task);
+            } finally {
+                semaphore.release();
+            }
+        }
+        Future<T> result = external.submit(limited(meter, task));
+        try {
+            return deadline.isBounded() ? result.get(deadline.remaining(NANOSECONDS), NANOSECONDS) : result.get();
+        } catch (TimeoutException e) {
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            result.cancel(true);
+        }
+    }
+
+    /**
+     * Start an asynchronous measurement of the Meter once it is within the limits of the Meter and of its cost class.
+     *
+     * @param meter
+     * @param start
+     *            starts the measurement and returns its future
+     * @return the future of the measurement; cancelling it before the measurement starts skips it
+     */
+    <T> ListenableFuture<T> submitAsync(Meter meter, final Callable<ListenableFuture<T>> start) {
+        final SettableFuture<T> retval = SettableFuture.create();
+        final AsyncPermits meterPermits = asyncPermits(meter);
+        final AsyncPermits costPermits = MeterCost.of(meter) == MeterCost.PROCESS ? externalAsync : null;
+        Runnable run = new Runnable() {
+            @Override
+            public void run() {
+                if (costPermits == null) {
+                    start(start, retval, meterPermits, null);
+                } else {
+                    costPermits.run(new Runnable() {
+                        @Override
+                        public void run() {
+                            start(start, retval, meterPermits, costPermits);
+                        }
+                    });
+                }
+            }
+        };
+        if (meterPermits == null) {
+            run.run();
+        } else {
+            meterPermits.run(run);
+        }
+        return retval;
+    }
+
+    /**
+     * Start the measurement and pass on its outcome to the result, releasing the permits when it completes.
+     */
+    private static <T> void start(Callable<ListenableFuture<T>> start, final SettableFuture<T> result,
+            final AsyncPermits meterPermits, final AsyncPermits costPermits) {
+        ListenableFuture<T> measurement;
+        if (result.isCancelled()) {
+            measurement = Futures.immediateCancelledFuture();
+        } else {
+            try {
+                measurement = start.call();
+            } catch (Exception e) {
+                measurement = Futures.immediateFailedFuture(e);
+            }
+        }
+        final ListenableFuture<T> started = measurement;
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (result.isCancelled()) {
+                    started.cancel(true);
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        Futures.addCallback(started, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                release();
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                release();
+                result.setException(t);
+            }
+
+            private void release() {
+                if (costPermits != null) {
+                    costPermits.release();
+                }
+                if (meterPermits != null) {
+                    meterPermits.release();
+                }
+            }
+        });
+    }
+
+    void shutdown() {
+        external.shutdown();
+    }
+
+    private <T> Callable<T> limited(Meter meter, final Callable<T> task) {
+        final Semaphore semaphore = semaphore(meter);
+        if (semaphore == null) {
+            return task;
+        }
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                semaphore.acquire();
+                try {
+                    return task.call();
+                } finally {
+                    semaphore.release();
+                }
+            }
+        };
+    }
+
+    private Semaphore semaphore(Meter meter) {
+        if (!(meter instanceof CostedMeter) || ((CostedMeter) meter).getMaxConcurrency() <= 0) {
+            return null;
+        }
+        Semaphore retval = permits.get(meter);
+        if (retval == null) {
+            Semaphore semaphore = new Semaphore(((CostedMeter) meter).getMaxConcurrency());
+            retval = permits.putIfAbsent(meter, semaphore);
+            if (retval == null) {
+                retval = semaphore;
+            }
+        }
+        return retval;
+    }
+
+    private AsyncPermits asyncPermits(Meter meter) {
+        if (!(meter instanceof CostedMeter) || ((CostedMeter) meter).getMaxConcurrency() <= 0) {
+            return null;
+        }
+        AsyncPermits retval = asyncPermits.get(meter);
+        if (retval == null) {
+            AsyncPermits created = new AsyncPermits(((CostedMeter) meter).getMaxConcurrency());
+            retval = asyncPermits.putIfAbsent(meter, created);
+            if (retval == null) {
+                retval = created;
+            }
+        }
+        return retval;
+    }
+
+    private static boolean acquire(Semaphore semaphore, Deadline deadline) throws InterruptedException {
+        if (deadline.isBounded()) {
+            return semaphore.tryAcquire(deadline.remaining(NANOSECONDS), NANOSECONDS);
+        }
+        semaphore.acquire();
+        return true;
+    }
+
+    private static <T> T callUnchecked(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
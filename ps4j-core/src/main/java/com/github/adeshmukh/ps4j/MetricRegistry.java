@@ -0,0 +1,77 @@
+package com.github.adeshmukh.ps4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns {@link Metric}s by name, giving each a dense integer id in the order they are first seen. The ids index
+ * the columns of a {@link RecordBatch}, so that consumers can resolve a metric name once and then access its values
+ * by array index.
+ * <p>
+ * Ids are never reused or removed, so they stay stable across the sweeps of a {@link Ps4j} instance. Instances are
+ * safe for use by multiple threads.
+ *
+ * @author adeshmukh
+ */
+public final class MetricRegistry {
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private volatile Metric<?>[] metrics = new Metric<?>[16];
+    private volatile int size;
+
+    /**
+     * Return the id of the metric, registering it if no metric of the same name has been registered before.
+     *
+     * @param metric
+     * @return
+     */
+    public int register(Metric<?> metric) {
+        checkArgument(metric != null, "metric cannot be null");
+        Integer id = ids.get(metric.getName());
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(metric.getName());
+            if (id != null) {
+                return id;
+            }
+            if (size == metrics.length) {
+                metrics = Arrays.copyOf(metrics, size * 2);
+            }
+            metrics[size] = metric;
+            ids.put(metric.getName(), size);
+            return size++;
+        }
+    }
+
+    /**
+     * @param metricName
+     * @return the id of the metric, or -1 if no metric of that name is registered
+     */
+    public int idOf(String metricName) {
+        Integer id = ids.get(metricName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id
+     * @return the metric first registered with the id
+     */
+    public Metric<?> get(int id) {
+        checkArgument(id >= 0 && id < size, "unknown metric id: %s", id);
+        return metrics[id];
+    }
+
+    /**
+     * Number of registered metrics, which is one more than the highest id.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+}
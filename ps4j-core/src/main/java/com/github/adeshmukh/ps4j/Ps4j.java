@@ -4,19 +4,38 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Collections2.transform;
 import static com.google.common.collect.Lists.newArrayList;
 import static java.lang.String.format;
-import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,12 +44,22 @@ import sun.jvmstat.monitor.MonitorException;
 import sun.jvmstat.monitor.MonitoredHost;
 import sun.jvmstat.monitor.VmIdentifier;
 
+import com.github.adeshmukh.ps4j.perfdata.MappedMonitoredHost;
+import com.github.adeshmukh.ps4j.perfdata.VmDiscovery;
+import com.github.adeshmukh.ps4j.perfdata.VmDiscoveryListener;
+import com.github.adeshmukh.ps4j.recording.RecordingReader;
+import com.github.adeshmukh.ps4j.recording.RecordingWriter;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.MinMaxPriorityQueue;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * Entry point into the ps4j api.
@@ -38,7 +67,7 @@ import com.google.common.collect.Iterables;
  * @author adeshmukh
  */
 @SuppressWarnings("restriction")
-public class Ps4j {
+public class Ps4j implements Closeable {
 
     // Ignoring parameterization of Measure since using the non-parameterized aspect of Measure
     @SuppressWarnings("rawtypes")
@@ -52,7 +81,8 @@ public class Ps4j {
     private final Function<Record, Record> RECORD_FIELD_STRAINER = new Function<Record, Record>() {
         @Override
         public Record apply(Record input) {
-            return Record.create().addAll(Iterables.filter(input.getMeasures(), METRICS_FILTER));
+            Record strained = Record.create(input.getVmId()).addAll(Iterables.filter(input.getMeasures(), METRICS_FILTER));
+            return input.isTimedOut() ? strained.markTimedOut() : strained;
         }
     };
 
@@ -60,6 +90,8 @@ public class Ps4j {
 
     private static final String VMID_TEMPLATE = "//%s?mode=r";
 
+    private static final String LOCALHOST = "localhost";
+
     private static final Predicate<Record> NOOP_RECORDS_FILTER = new Predicate<Record>() {
 
         @Override
@@ -68,6 +100,11 @@ public class Ps4j {
         }
     };
 
+    /**
+     * Put in the completion queue of a sweep once its BatchMeters complete.
+     */
+    private static final Future<Record> BATCHES_DONE = Futures.immediateFuture(null);
+
     private static final Function<Future<Record>, Record> FUTURE_TO_RECORD_TRANSFORMER = new Function<Future<Record>, Record>() {
 
         @Override
@@ -80,6 +117,13 @@ public class Ps4j {
         }
     };
 
+    private static final Function<VmIdentifier, Integer> GET_LOCAL_VM_ID = new Function<VmIdentifier, Integer>() {
+        @Override
+        public Integer apply(VmIdentifier vmId) {
+            return vmId.getLocalVmId();
+        }
+    };
+
     private static final Comparator<Metric<?>> METRIC_NAME_COMPARATOR = new Comparator<Metric<?>>() {
 
         @Override
@@ -97,90 +141,662 @@ public class Ps4j {
 
     private MonitoredHost monitoredHost;
     private Ps4jConfig config;
-    private Iterable<Record> records;
+    private ExecutorService ownedExecutor;
+    private MeterScheduler scheduler;
+    private VmDiscovery discovery;
+    private final Integer currentVmId = currentVmId();
+    private final ConcurrentMap<Integer, VmIdentifier> vmIdentifiers = new ConcurrentHashMap<Integer, VmIdentifier>();
+    private final MetricRegistry registry = new MetricRegistry();
 
     public Ps4j(Ps4jConfig config) throws Ps4jException {
         checkArgument(config != null, "config cannot be null");
         try {
             this.config = config;
-            monitoredHost = MonitoredHost.getMonitoredHost(config.getHostname());
+            monitoredHost = newMonitoredHost(config);
+            if (LOCALHOST.equals(config.getHostname())) {
+                discovery = new VmDiscovery();
+                discovery.addListener(new VmDiscoveryListener() {
+                    @Override
+                    public void vmStarted(int vmId, long timestamp) {
+                        log.debug("Discovered vm [{}]", vmId);
+                    }
+
+                    @Override
+                    public void vmExited(int vmId, long timestamp) {
+                        log.debug("Vm [{}] exited", vmId);
+                        vmIdentifiers.remove(vmId);
+                    }
+                });
+            }
+        } catch (Ps4jException pe) {
+            throw pe;
         } catch (Exception e) {
             throw new Ps4jException(e);
         }
     }
 
+    private static MonitoredHost newMonitoredHost(Ps4jConfig config) throws Exception {
+        if (config.getBackend() == Ps4jConfig.Backend.MAPPED) {
+            if (!LOCALHOST.equals(config.getHostname())) {
+                throw new Ps4jException("The MAPPED backend only supports " + LOCALHOST);
+            }
+            return new MappedMonitoredHost();
+        }
+        return MonitoredHost.getMonitoredHost(config.getHostname());
+    }
+
     public Collection<Metric<?>> options() throws Ps4jException {
         ImmutableSortedSet.Builder<Metric<?>> builder = ImmutableSortedSet.<Metric<?>> orderedBy(METRIC_NAME_COMPARATOR);
         for (Meter meter : config.getMeters()) {
             builder.addAll(meter.supportedMetrics());
         }
         Set<Metric<?>> retval = builder.build();
-        List<String> metricNames = config.getMetricNames();
-        if (!metricNames.isEmpty()) {
-            List<String> badMetrics = newArrayList(metricNames);
-            badMetrics.removeAll(transform(retval, GET_NAME));
-            if (!badMetrics.isEmpty()) {
-                throw new Ps4jException("Invalid metrics specified: " + Joiner.on(",").join(badMetrics));
-            }
+        checkSupported(config.getMetricNames(), retval, "Invalid metrics specified: ");
+        if (config.getOrdering() != null) {
+            checkSupported(config.getOrdering().getMetricNames(), retval, "Invalid sort metrics specified: ");
+        }
+        if (config.getPredicate() != null) {
+            checkSupported(config.getPredicate().getMetricNames(), retval, "Invalid predicate metrics specified: ");
         }
         return retval;
     }
 
-    public Iterable<Record> measure() throws Ps4jException {
+    private static void checkSupported(Collection<String> metricNames, Set<Metric<?>> supported, String message) {
+        List<String> badMetrics = newArrayList(metricNames);
+        badMetrics.removeAll(transform(supported, GET_NAME));
+        if (!badMetrics.isEmpty()) {
+            throw new Ps4jException(message + Joiner.on(",").join(badMetrics));
+        }
+    }
+
+    /**
+     * Measure the active VMs, returning their Records once all VMs have been measured.
+     *
+     * @return the Records by column, with the metrics identified by the registry of this instance, see
+     *         {@link #getMetricRegistry()}
+     * @throws Ps4jException
+     */
+    public RecordBatch measure() throws Ps4jException {
+        final RecordBatch.Builder records = RecordBatch.builder(registry);
+        measure(new RecordListener() {
+            @Override
+            public void recordMeasured(Record record) {
+                records.add(record);
+            }
+        });
+        return records.build();
+    }
+
+    /**
+     * Measure the active VMs, pushing each Record to the listener as soon as it is available rather than in the order
+     * of the VMs. Returns once all VMs have been measured.
+     *
+     * @param listener
+     *            invoked from the calling thread
+     * @throws Ps4jException
+     */
+    public void measure(RecordListener listener) throws Ps4jException {
+        checkArgument(listener != null, "listener cannot be null");
+        options(); // validate config.getMetricNames()
+        VmAttachments attachments = new VmAttachments(monitoredHost);
+        try {
+            sweep(attachments, 1, listener);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new Ps4jException(ie);
+        } catch (RuntimeException e) {
+            throw new Ps4jException(e);
+        } finally {
+            attachments.close();
+        }
+    }
+
+    /**
+     * Sample the active VMs repeatedly at a fixed rate, notifying the listener after each sweep. VMs stay attached
+     * between sweeps and are detached once they exit or when this method returns. The Records of each sweep are
+     * passed to the listener as a {@link RecordBatch}, whose metric ids stay the same across sweeps.
+     * <p>
+     * Sweeps are scheduled relative to the time of the first sweep, so that the sampling rate does not drift with the
+     * time taken by each sweep. If a sweep overruns the interval, the ticks that were missed are skipped rather than
+     * run back-to-back. The method blocks until <code>count</code> sweeps have completed or the calling thread is
+     * interrupted.
+     *
+     * @param interval
+     *            time between the start of successive sweeps
+     * @param unit
+     * @param count
+     *            number of sweeps to run, or 0 to run until interrupted
+     * @param listener
+     * @throws Ps4jException
+     */
+    public void watch(long interval, TimeUnit unit, int count, SweepListener listener) throws Ps4jException {
+        checkArgument(interval > 0, "interval must be positive");
+        checkArgument(count >= 0, "count cannot be negative");
+        checkArgument(listener != null, "listener cannot be null");
         options(); // validate config.getMetricNames()
 
-        ExecutorService threadPool = null;
+        long period = unit.toNanos(interval);
+        VmAttachments attachments = new VmAttachments(monitoredHost);
         try {
-            // 1. Prepare input for execution
-            List<VmIdentifier> vmIds = monitoredVmIds(monitoredHost);
-            log.debug("Available vmIds: [{}]", vmIds);
-
-            // 2. Execute in threadpool
-            int numThreads = (int) (vmIds.size() * config.getConcurrencyFactor());
-            threadPool = newFixedThreadPool(numThreads);
-            List<Future<Record>> results = new ArrayList<Future<Record>>(vmIds.size());
-            for (VmIdentifier vmId : vmIds) {
-                Future<Record> recordHolder = threadPool.submit(newMeasureMonitorsTask(vmId));
-                results.add(recordHolder);
+            long start = System.nanoTime();
+            long tick = 0;
+            for (int sweep = 1;; sweep++) {
+                final RecordBatch.Builder records = RecordBatch.builder(registry);
+                sweep(attachments, sweep, new RecordListener() {
+                    @Override
+                    public void recordMeasured(Record record) {
+                        records.add(record);
+                    }
+                });
+                listener.sweepCompleted(sweep, records.build());
+                if (count > 0 && sweep >= count) {
+                    break;
+                }
+                long now = System.nanoTime();
+                long next = start + (++tick) * period;
+                if (next <= now) {
+                    long missed = (now - next) / period + 1;
+                    log.debug("Sweep {} overran the interval, skipping {} tick(s)", sweep, missed);
+                    tick += missed;
+                    next = start + tick * period;
+                }
+                NANOSECONDS.sleep(next - now);
             }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            throw new Ps4jException(e);
+        } finally {
+            attachments.close();
+        }
+    }
 
-            // 3. Prepare and display output
-            records = FluentIterable.from(results)
-                    .transform(FUTURE_TO_RECORD_TRANSFORMER)
-                    .filter(NOOP_RECORDS_FILTER)
-                    .transform(RECORD_FIELD_STRAINER);
-            log.debug("Available records: [{}]", Iterables.size(records));
-        } catch (Exception e) {
+    /**
+     * Replay the sweeps of a recording made with a {@link RecordingWriter}, e.g. as the listener of
+     * {@link #watch(long, TimeUnit, int, SweepListener)}. The recorded Records are restricted to the configured metrics,
+     * as for a live sweep.
+     *
+     * @param recording
+     * @param from
+     *            earliest time of the sweeps to replay, in millis since the epoch
+     * @param to
+     *            latest time of the sweeps to replay, in millis since the epoch
+     * @param listener
+     * @throws Ps4jException
+     */
+    public void replay(File recording, long from, long to, final SweepListener listener) throws Ps4jException {
+        checkArgument(recording != null, "recording cannot be null");
+        checkArgument(listener != null, "listener cannot be null");
+        options(); // validate config.getMetricNames()
+        RecordingReader reader = null;
+        try {
+            reader = new RecordingReader(recording, config.getMeters());
+            reader.replay(from, to, new SweepListener() {
+                @Override
+                public void sweepCompleted(int sweep, Iterable<Record> records) {
+                    final RecordBatch.Builder strained = RecordBatch.builder(registry)
+                            .timestamp(RecordBatch.copyOf(records).getTimestamp());
+                    Selection selection = new Selection(new RecordListener() {
+                        @Override
+                        public void recordMeasured(Record record) {
+                            strained.add(record);
+                        }
+                    });
+                    for (Record record : records) {
+                        selection.add(record);
+                    }
+                    selection.complete();
+                    listener.sweepCompleted(sweep, strained.build());
+                }
+            });
+        } catch (IOException e) {
             throw new Ps4jException(e);
+        } catch (RuntimeException e) {
+            throw new Ps4jException(e);
+        } finally {
+            Closeables.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Shut down the executors created by this instance, if any. An executor supplied via
+     * {@link Ps4jConfig#setExecutor(ExecutorService)} is left running.
+     */
+    @Override
+    public synchronized void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            ownedExecutor = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * The registry giving ids to the metrics of the {@link RecordBatch}es returned by this instance.
+     *
+     * @return
+     */
+    public MetricRegistry getMetricRegistry() {
+        return registry;
+    }
+
+    /**
+     * Register a listener for VMs starting and exiting on the local host. Events are detected at the start of each
+     * sweep; nothing is reported when monitoring a remote host.
+     *
+     * @param listener
+     */
+    public void addVmDiscoveryListener(VmDiscoveryListener listener) {
+        if (discovery != null) {
+            discovery.addListener(listener);
+        }
+    }
+
+    private synchronized ExecutorService executor(int numVms) {
+        if (config.getExecutor() != null) {
+            return config.getExecutor();
+        }
+        if (ownedExecutor == null) {
+            ownedExecutor = Ps4jExecutors.newExecutor(config.getThreadMode());
+        }
+        if (ownedExecutor instanceof ThreadPoolExecutor) {
+            Ps4jExecutors.resize((ThreadPoolExecutor) ownedExecutor, (int) Math.ceil(numVms * config.getConcurrencyFactor()));
+        }
+        return ownedExecutor;
+    }
+
+    private synchronized MeterScheduler scheduler() {
+        if (scheduler == null) {
+            scheduler = new MeterScheduler(config.getMaxExternalProcesses());
+        }
+        return scheduler;
+    }
+
+    /**
+     * Runs a single sweep, delivering each Record to the listener as soon as the measurement of its VM completes. A
+     * slow VM therefore only delays its own Record. The listener is invoked from the calling thread.
+     * <p>
+     * If the sweep deadline expires, the VMs still being measured are cancelled and delivered with the measures
+     * collected until then, marked as timed out.
+     * <p>
+     * BatchMeters run alongside the per-VM tasks rather than in them. A Record is delivered as soon as both its task
+     * and the BatchMeters are done: Records completed before the BatchMeters are held until their results come in,
+     * later ones are merged straight away. With a predicate, the per-VM Meters run first and reject the VMs that cannot
+     * match as soon as possible. The BatchMeters, which are the expensive ones, then run for the remaining VMs only,
+     * once all the per-VM tasks have completed.
+     *
+     * @param attachments
+     * @param sweep
+     *            sequence number of the sweep
+     * @param listener
+     * @throws InterruptedException
+     */
+    private void sweep(VmAttachments attachments, int sweep, RecordListener listener) throws InterruptedException {
+        Deadline deadline = Deadline.after(config.getSweepTimeoutMillis(), MILLISECONDS);
+
+        // 1. Prepare input for execution
+        List<VmIdentifier> vmIds = monitoredVmIds(monitoredHost);
+        log.debug("Available vmIds: [{}]", vmIds);
+        attachments.retain(vmIds);
+
+        // 2. Execute in threadpool, skipping the Meters that contribute none of the requested metrics and running the
+        // cheap ones first. BatchMeters measure all VMs at once, outside of the per-VM tasks.
+        List<Meter> meters = newArrayList();
+        List<BatchMeter> batchMeters = newArrayList();
+        List<BatchMeter> deferred = newArrayList();
+        for (Meter meter : MeterScheduler.byCost(config.getMeters())) {
+            if (!config.hasMetricOf(meter)) {
+                continue;
+            }
+            if (!(meter instanceof BatchMeter)) {
+                meters.add(meter);
+            } else if (config.getPredicate() != null) {
+                deferred.add((BatchMeter) meter);
+            } else {
+                batchMeters.add((BatchMeter) meter);
+            }
+        }
+        ExecutorService executor = executor(vmIds.size());
+        MeterScheduler scheduler = scheduler();
+        // the completion of the BatchMeters is signalled through the queue of the tasks, see BATCHES_DONE
+        BlockingQueue<Future<Record>> completed = new LinkedBlockingQueue<Future<Record>>();
+        CompletionService<Record> completionService = new ExecutorCompletionService<Record>(executor, completed);
+        Map<Future<Record>, Ps4jTask> pending = new HashMap<Future<Record>, Ps4jTask>();
+        SweepContext context = new SweepContext(sweep, ImmutableList.copyOf(transform(vmIds, GET_LOCAL_VM_ID)),
+                config.getMeasuredMetricNamesSet(), deadline);
+        Map<BatchMeter, Future<Map<Integer, Collection<? extends Measure<?>>>>> batchResults =
+                new HashMap<BatchMeter, Future<Map<Integer, Collection<? extends Measure<?>>>>>();
+        SweepContext deferredContext = null;
+        Map<BatchMeter, Future<Map<Integer, Collection<? extends Measure<?>>>>> deferredResults =
+                new LinkedHashMap<BatchMeter, Future<Map<Integer, Collection<? extends Measure<?>>>>>();
+        try {
+            // BatchMeters are started ahead of the per-VM tasks, the expensive ones in a pool of their own, and their
+            // results are merged into the Records by this thread, so that no task waits for them
+            if (!vmIds.isEmpty() && !batchMeters.isEmpty()) {
+                List<ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>>> batchFutures = newArrayList();
+                for (BatchMeter meter : batchMeters) {
+                    ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> result =
+                            submitBatch(meter, context, scheduler, executor);
+                    batchResults.put(meter, result);
+                    batchFutures.add(result);
+                }
+                signalCompletion(Futures.successfulAsList(batchFutures), completed);
+            }
+            for (VmIdentifier vmId : vmIds) {
+                Ps4jTask task = newMeasureMonitorsTask(vmId, attachments, meters, scheduler, deadline);
+                pending.put(completionService.submit(task), task);
+            }
+
+            // 3. Deliver output in completion order, or select it by the ordering once the sweep completes. Records
+            // are held while the BatchMeters are running, and until all tasks complete if there are deferred ones.
+            Selection selection = new Selection(listener);
+            List<Record> candidates = batchResults.isEmpty() && deferred.isEmpty() ? null : new ArrayList<Record>();
+            int numRecords = 0;
+            while (!pending.isEmpty() || candidates != null && !candidates.isEmpty() && !batchResults.isEmpty()) {
+                Future<Record> result = deadline.isBounded()
+                        ? completionService.poll(deadline.remaining(NANOSECONDS), NANOSECONDS)
+                        : completionService.take();
+                if (result == null) {
+                    break;
+                }
+                if (result == BATCHES_DONE) {
+                    merge(candidates, batchResults, deadline);
+                    for (Record record : candidates) {
+                        selection.add(record);
+                    }
+                    candidates = null;
+                    continue;
+                }
+                pending.remove(result);
+                Record record = FUTURE_TO_RECORD_TRANSFORMER.apply(result);
+                if (candidates == null && !batchResults.isEmpty() && NOOP_RECORDS_FILTER.apply(record)) {
+                    merge(Collections.singletonList(record), batchResults, deadline);
+                }
+                numRecords += accept(record, candidates, selection);
+            }
+
+            // 4. Deliver partial output for the VMs that missed the deadline
+            if (!pending.isEmpty()) {
+                log.debug("Sweep deadline expired with {} vm(s) pending", pending.size());
+            }
+            for (Iterator<Map.Entry<Future<Record>, Ps4jTask>> it = pending.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Future<Record>, Ps4jTask> entry = it.next();
+                it.remove();
+                Record record = entry.getKey().cancel(true)
+                        ? entry.getValue().partialRecord()
+                        : FUTURE_TO_RECORD_TRANSFORMER.apply(entry.getKey());
+                numRecords += accept(record, candidates, selection);
+            }
+
+            // 5. Merge the results of the BatchMeters, and run the deferred ones for the VMs that can still match
+            if (candidates != null && !candidates.isEmpty()) {
+                merge(candidates, batchResults, deadline);
+                if (!deferred.isEmpty()) {
+                    List<Integer> candidateIds = new ArrayList<Integer>(candidates.size());
+                    for (Record record : candidates) {
+                        candidateIds.add(record.getVmId());
+                    }
+                    deferredContext = new SweepContext(sweep, candidateIds, config.getMeasuredMetricNamesSet(), deadline);
+                    log.debug("Running deferred meters for {} of {} vm(s)", candidateIds.size(), vmIds.size());
+                    for (BatchMeter meter : deferred) {
+                        deferredResults.put(meter, submitBatch(meter, deferredContext, scheduler, executor));
+                    }
+                    merge(candidates, deferredResults, deadline);
+                }
+                for (Record record : candidates) {
+                    selection.add(record);
+                }
+            }
+            selection.complete();
+            log.debug("Available records: [{}]", numRecords);
         } finally {
-            if (threadPool != null)
-                threadPool.shutdown();
+            for (Future<Record> result : pending.keySet()) {
+                result.cancel(true);
+            }
+            for (Map.Entry<BatchMeter, Future<Map<Integer, Collection<? extends Measure<?>>>>> entry : batchResults.entrySet()) {
+                entry.getValue().cancel(true);
+                closeQuietly(entry.getKey(), context);
+            }
+            for (Map.Entry<BatchMeter, Future<Map<Integer, Collection<? extends Measure<?>>>>> entry : deferredResults.entrySet()) {
+                entry.getValue().cancel(true);
+                closeQuietly(entry.getKey(), deferredContext);
+            }
+        }
+    }
+
+    /**
+     * Put {@link #BATCHES_DONE} in the queue once the BatchMeters complete.
+     */
+    private static void signalCompletion(ListenableFuture<?> batches, final BlockingQueue<Future<Record>> completed) {
+        batches.addListener(new Runnable() {
+            @Override
+            public void run() {
+                completed.add(BATCHES_DONE);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Hold the Record for the BatchMeters, unless there are none or the VM already missed the deadline.
+     *
+     * @param candidates
+     *            Records held for the BatchMeters, null if there are none
+     * @return the number of Records accepted, 0 or 1
+     */
+    private static int accept(Record record, List<Record> candidates, Selection selection) {
+        if (candidates == null || record.isTimedOut()) {
+            return selection.add(record);
+        }
+        if (!NOOP_RECORDS_FILTER.apply(record)) {
+            return 0;
+        }
+        candidates.add(record);
+        return 1;
+    }
+
+    /**
+     * Add the measures of the BatchMeters to the Records, in the order of the Meters. If the deadline expires first,
+     * the Records are marked as timed out.
+     */
+    private static void merge(List<Record> records,
+            Map<BatchMeter, Future<Map<Integer, Collection<? extends Measure<?>>>>> batchResults, Deadline deadline)
+            throws InterruptedException {
+        for (Map.Entry<BatchMeter, Future<Map<Integer, Collection<? extends Measure<?>>>>> entry : batchResults.entrySet()) {
+            Map<Integer, Collection<? extends Measure<?>>> measures;
+            try {
+                measures = deadline.isBounded()
+                        ? entry.getValue().get(deadline.remaining(NANOSECONDS), NANOSECONDS)
+                        : entry.getValue().get();
+            } catch (TimeoutException e) {
+                log.debug("Sweep deadline expired waiting for {}", entry.getKey().getClass().getName());
+                for (Record record : records) {
+                    record.markTimedOut();
+                }
+                return;
+            } catch (ExecutionException e) {
+                log.error("Batch measurement failed", e.getCause());
+                continue;
+            }
+            for (Record record : records) {
+                Collection<? extends Measure<?>> vmMeasures = measures.get(record.getVmId());
+                if (vmMeasures != null) {
+                    record.addAll(vmMeasures);
+                }
+            }
+        }
+    }
+
+    /**
+     * Selects the Records of a sweep to deliver. Records that do not meet the predicate are dropped; a Record that
+     * timed out is kept unless it is certain not to meet it. With an ordering the Records are held in a heap bounded
+     * by the top limit, if any, and delivered in order once the sweep completes; otherwise they are delivered as they
+     * complete, up to the top limit.
+     */
+    private final class Selection {
+        private final RecordListener listener;
+        private final MinMaxPriorityQueue<Record> heap;
+        private int numDelivered;
+
+        Selection(RecordListener listener) {
+            this.listener = listener;
+            RecordOrdering ordering = config.getOrdering();
+            if (ordering == null) {
+                heap = null;
+            } else if (config.getTop() > 0) {
+                heap = MinMaxPriorityQueue.orderedBy(ordering).maximumSize(config.getTop()).create();
+            } else {
+                heap = MinMaxPriorityQueue.orderedBy(ordering).create();
+            }
         }
-        return records;
+
+        /**
+         * @return the number of Records accepted, 0 or 1
+         */
+        int add(Record record) {
+            if (!NOOP_RECORDS_FILTER.apply(record) || !meetsPredicate(record)) {
+                return 0;
+            }
+            if (heap != null) {
+                heap.offer(record);
+                return 1;
+            }
+            if (config.getTop() > 0 && numDelivered >= config.getTop()) {
+                return 0;
+            }
+            numDelivered += deliver(record, listener);
+            return 1;
+        }
+
+        private boolean meetsPredicate(Record record) {
+            if (config.getPredicate() == null) {
+                return true;
+            }
+            RecordPredicate.Result result = config.getPredicate().evaluate(record);
+            return result == RecordPredicate.Result.TRUE
+                    || record.isTimedOut() && result == RecordPredicate.Result.UNKNOWN;
+        }
+
+        void complete() {
+            if (heap != null) {
+                while (!heap.isEmpty()) {
+                    deliver(heap.pollFirst(), listener);
+                }
+            }
+        }
+    }
+
+    private int deliver(Record record, RecordListener listener) {
+        if (!NOOP_RECORDS_FILTER.apply(record)) {
+            return 0;
+        }
+        listener.recordMeasured(RECORD_FIELD_STRAINER.apply(record));
+        return 1;
+    }
+
+    private Ps4jTask newMeasureMonitorsTask(VmIdentifier vmId, VmAttachments attachments, List<Meter> meters,
+            MeterScheduler scheduler, Deadline deadline) {
+        return new Ps4jTask(attachments, vmId, new LinkedList<Meter>(meters), config.getMeasuredMetricNamesSet(),
+                config.getPredicate(), scheduler, deadline, config.getVmTimeoutMillis());
     }
 
-    private Callable<Record> newMeasureMonitorsTask(VmIdentifier vmId) {
-        Collection<Meter> meters = new LinkedList<Meter>();
-        Iterables.addAll(meters, config.getMeters());
-        return new Ps4jTask(monitoredHost, vmId, meters);
+    /**
+     * Start measuring all VMs of the sweep with the BatchMeter. An {@link AsyncBatchMeter} is started without taking
+     * a thread of the executor.
+     */
+    private static ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> submitBatch(BatchMeter meter,
+            SweepContext context, MeterScheduler scheduler, ExecutorService executor) {
+        if (meter instanceof AsyncBatchMeter) {
+            return scheduler.submitAsync(meter, newAsyncBatchStart((AsyncBatchMeter) meter, context));
+        }
+        return scheduler.submit(meter, newBatchTask(meter, context), executor);
+    }
+
+    /**
+     * Starts the asynchronous measurement of all VMs of the sweep with the BatchMeter. A measurement that fails to
+     * start contributes no measures.
+     */
+    private static Callable<ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>>> newAsyncBatchStart(
+            final AsyncBatchMeter meter, final SweepContext context) {
+        return new Callable<ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>>>() {
+            @Override
+            public ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> call() {
+                try {
+                    meter.open(context);
+                    ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> retval = meter.measureDataAsync(context);
+                    if (retval != null) {
+                        return retval;
+                    }
+                } catch (Exception e) {
+                    log.error("Error measuring " + context + " with " + meter.getClass().getName(), e);
+                }
+                return Futures.immediateFuture(Collections.<Integer, Collection<? extends Measure<?>>> emptyMap());
+            }
+        };
+    }
+
+    /**
+     * Task that measures all VMs of the sweep with the BatchMeter. A failed measurement contributes no measures.
+     */
+    private static Callable<Map<Integer, Collection<? extends Measure<?>>>> newBatchTask(final BatchMeter meter,
+            final SweepContext context) {
+        return new Callable<Map<Integer, Collection<? extends Measure<?>>>>() {
+            @Override
+            public Map<Integer, Collection<? extends Measure<?>>> call() {
+                Deadline.setCurrent(context.getDeadline());
+                try {
+                    meter.open(context);
+                    Map<Integer, Collection<? extends Measure<?>>> retval = meter.measureData(context);
+                    return retval == null ? Collections.<Integer, Collection<? extends Measure<?>>> emptyMap() : retval;
+                } catch (Exception e) {
+                    log.error("Error measuring " + context + " with " + meter.getClass().getName(), e);
+                    return Collections.emptyMap();
+                } finally {
+                    Deadline.clearCurrent();
+                }
+            }
+        };
+    }
+
+    private static void closeQuietly(BatchMeter meter, SweepContext context) {
+        try {
+            meter.close(context);
+        } catch (RuntimeException e) {
+            log.warn("Error closing " + meter.getClass().getName(), e);
+        }
     }
 
     private List<VmIdentifier> monitoredVmIds(MonitoredHost monitoredHost) throws RuntimeException {
         List<VmIdentifier> vmIds = null;
         try {
 
-            Integer currentVmId = currentVmId();
-
-            Set<Integer> vmIdNums = monitoredHost.activeVms();
+            // the MAPPED backend tracks the hsperfdata directories incrementally; jvmstat lists the VMs afresh on every
+            // sweep, including those of containers that it finds under /proc/<pid>/root/tmp
+            Set<Integer> vmIdNums;
+            if (config.getBackend() == Ps4jConfig.Backend.MAPPED) {
+                vmIdNums = discovery.refresh();
+            } else {
+                vmIdNums = monitoredHost.activeVms();
+                vmIdentifiers.keySet().retainAll(vmIdNums);
+                if (discovery != null) {
+                    discovery.update(vmIdNums);
+                }
+            }
             vmIds = new ArrayList<VmIdentifier>(vmIdNums.size());
-            for (Number vmId : vmIdNums) {
+            for (Integer vmId : vmIdNums) {
 
                 // skip reporting for the ps4j process itself
                 if (currentVmId.intValue() == vmId.intValue()) {
                     continue;
                 }
 
-                VmIdentifier vmIdentifier = new VmIdentifier(format(VMID_TEMPLATE, vmId));
+                VmIdentifier vmIdentifier = vmIdentifiers.get(vmId);
+                if (vmIdentifier == null) {
+                    vmIdentifier = new VmIdentifier(format(VMID_TEMPLATE, vmId));
+                    vmIdentifiers.put(vmId, vmIdentifier);
+                }
                 vmIds.add(vmIdentifier);
             }
         } catch (URISyntaxException ue) {
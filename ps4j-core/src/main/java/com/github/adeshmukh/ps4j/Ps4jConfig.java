@@ -5,6 +5,8 @@ import static com.google.common.base.Preconditions.checkArgument;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
@@ -15,21 +17,72 @@ import com.google.common.collect.Sets;
  */
 public final class Ps4jConfig {
 
+    /**
+     * Kind of threads used to measure VMs when the caller does not supply an executor.
+     */
+    public static enum ThreadMode {
+        /**
+         * A pool of platform threads, sized by the concurrency factor and capped at the number of available processors.
+         */
+        PLATFORM,
+        /**
+         * One virtual thread per VM task. Requires JDK21+, otherwise falls back to {@link #PLATFORM}.
+         */
+        VIRTUAL
+    }
+
     /**
      * Default instance for convenience.
      */
     public static Ps4jConfig DEFAULT = new Ps4jConfig();
 
+    /**
+     * How the hsperfdata of the monitored VMs is accessed.
+     */
+    public static enum Backend {
+        /**
+         * Through the jvmstat implementation (<code>sun.jvmstat.monitor.MonitoredHost</code>). Supports remote hosts.
+         */
+        JVMSTAT,
+        /**
+         * By memory mapping the hsperfdata files of the local host directly, see
+         * {@link com.github.adeshmukh.ps4j.perfdata.MappedMonitoredHost}.
+         */
+        MAPPED
+    }
+
+    public static final int DEFAULT_MAX_EXTERNAL_PROCESSES = 2;
+
     private double concurrencyFactor = 1;
 
+    private Backend backend = Backend.JVMSTAT;
+
     private String hostname = "localhost";
 
+    private ExecutorService executor;
+
+    private ThreadMode threadMode = ThreadMode.PLATFORM;
+
+    private long sweepTimeoutMillis;
+
+    private long vmTimeoutMillis;
+
     private Iterable<? extends Meter> meters;
 
     private List<String> metricNames = Collections.emptyList();
 
     private Set<String> metricNamesSet = Collections.emptySet();
 
+    private Set<String> measuredMetricNamesSet = Collections.emptySet();
+
+    private RecordOrdering ordering;
+
+    private RecordPredicate predicate;
+
+    private int top;
+
+    private int maxExternalProcesses = DEFAULT_MAX_EXTERNAL_PROCESSES;
+
     public Iterable<? extends Meter> getMeters() {
         return meters;
     }
@@ -48,14 +101,23 @@ public final class Ps4jConfig {
         this.hostname = hostname;
     }
 
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public void setBackend(@Nonnull Backend backend) {
+        checkArgument(backend != null, "backend cannot be null");
+        this.backend = backend;
+    }
+
     public double getConcurrencyFactor() {
         return concurrencyFactor;
     }
 
     /**
      * Value for concurrency factor must be in the range (0,1).
-     * 0 implies use single threaded execution. 1 implies one thread per VM.
-     * Default is 0.5 (1 thread per 2 VMs).
+     * 0 implies use single threaded execution. 1 implies one thread per VM, up to the number of available processors.
+     * Default is 1. Only applies to {@link ThreadMode#PLATFORM} threads created by Ps4j.
      *
      * @param cf
      */
@@ -64,6 +126,80 @@ public final class Ps4jConfig {
         this.concurrencyFactor = cf;
     }
 
+    public int getMaxExternalProcesses() {
+        return maxExternalProcesses;
+    }
+
+    /**
+     * Maximum number of {@link MeterCost#PROCESS} measurements, i.e. of external commands such as <code>ps</code> or
+     * <code>lsof</code>, run at the same time. Further measurements wait in a queue. The measurements of
+     * {@link AsyncBatchMeter}s are limited to the same number separately, as they hold no thread. Default is
+     * {@value #DEFAULT_MAX_EXTERNAL_PROCESSES}.
+     *
+     * @param maxExternalProcesses
+     */
+    public void setMaxExternalProcesses(int maxExternalProcesses) {
+        checkArgument(maxExternalProcesses > 0, "maxExternalProcesses must be positive");
+        this.maxExternalProcesses = maxExternalProcesses;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Executor used to run the {@link Ps4jTask}s. The executor is owned by the caller: it is reused across calls to
+     * {@link Ps4j#measure()} and is never shut down by Ps4j. If not set, Ps4j creates an executor according to the
+     * {@link ThreadMode} and shuts it down on {@link Ps4j#close()}.
+     *
+     * @param executor
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public void setThreadMode(@Nonnull ThreadMode threadMode) {
+        checkArgument(threadMode != null, "threadMode cannot be null");
+        this.threadMode = threadMode;
+    }
+
+    public long getSweepTimeoutMillis() {
+        return sweepTimeoutMillis;
+    }
+
+    /**
+     * Time allowed for measuring all the VMs in a sweep. VMs that have not been measured when it expires are reported
+     * with the measures collected until then, see {@link Record#isTimedOut()}, and their measurement is cancelled.
+     * Default is 0 (no limit).
+     *
+     * @param timeout
+     * @param unit
+     */
+    public void setSweepTimeout(long timeout, @Nonnull TimeUnit unit) {
+        checkArgument(timeout >= 0, "timeout cannot be negative");
+        this.sweepTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getVmTimeoutMillis() {
+        return vmTimeoutMillis;
+    }
+
+    /**
+     * Time allowed for measuring a single VM, counted from when its measurement starts. Meters that have not run when
+     * it expires are skipped and the VM is reported as timed out. Default is 0 (no limit).
+     *
+     * @param timeout
+     * @param unit
+     */
+    public void setVmTimeout(long timeout, @Nonnull TimeUnit unit) {
+        checkArgument(timeout >= 0, "timeout cannot be negative");
+        this.vmTimeoutMillis = unit.toMillis(timeout);
+    }
+
     public List<String> getMetricNames() {
         return metricNames;
     }
@@ -71,10 +207,115 @@ public final class Ps4jConfig {
     public void setMetricNames(@Nonnull List<String> outputFields) {
         checkArgument(outputFields != null, "outputFields cannot be set to null value");
         this.metricNames = Collections.unmodifiableList(outputFields);
-        this.metricNamesSet = Sets.newHashSet(outputFields);
+        this.metricNamesSet = Collections.unmodifiableSet(Sets.newHashSet(outputFields));
+        updateMeasuredMetricNames();
+    }
+
+    /**
+     * Names of the requested metrics. An empty set implies all metrics.
+     *
+     * @return
+     */
+    public Set<String> getMetricNamesSet() {
+        return metricNamesSet;
+    }
+
+    public RecordOrdering getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * Order in which the Records of a sweep are delivered. The Records are then held until the sweep completes rather
+     * than delivered as soon as they are measured. The metrics of the ordering are measured even if they are not among
+     * the metric names, but are only delivered if they are. Default is null, i.e. in order of completion.
+     *
+     * @param ordering
+     */
+    public void setOrdering(RecordOrdering ordering) {
+        this.ordering = ordering;
+        updateMeasuredMetricNames();
+    }
+
+    public RecordPredicate getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * Condition that the Records of a sweep must meet to be delivered. The metrics of the predicate are measured even
+     * if they are not among the metric names. Meters that measure all VMs at once, i.e. the {@link BatchMeter}s, then
+     * run after the other Meters and only for the VMs that can still meet the condition. Default is null, i.e. all
+     * Records are delivered.
+     *
+     * @param predicate
+     */
+    public void setPredicate(RecordPredicate predicate) {
+        this.predicate = predicate;
+        updateMeasuredMetricNames();
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * Maximum number of Records delivered per sweep: the first ones in the {@link #getOrdering() ordering}, or the
+     * first ones to complete if there is no ordering. Default is 0 (no limit).
+     *
+     * @param top
+     */
+    public void setTop(int top) {
+        checkArgument(top >= 0, "top cannot be negative");
+        this.top = top;
+    }
+
+    /**
+     * Names of the metrics that need to be measured: the requested metrics and the metrics of the ordering and of the
+     * predicate. An empty set implies all metrics.
+     *
+     * @return
+     */
+    public Set<String> getMeasuredMetricNamesSet() {
+        return measuredMetricNamesSet;
+    }
+
+    private void updateMeasuredMetricNames() {
+        if (metricNamesSet.isEmpty() || ordering == null && predicate == null) {
+            measuredMetricNamesSet = metricNamesSet;
+        } else {
+            Set<String> measured = Sets.newHashSet(metricNamesSet);
+            if (ordering != null) {
+                measured.addAll(ordering.getMetricNames());
+            }
+            if (predicate != null) {
+                measured.addAll(predicate.getMetricNames());
+            }
+            measuredMetricNamesSet = Collections.unmodifiableSet(measured);
+        }
     }
 
+    /**
+     * Whether the metric is requested, i.e. it is one of the metric names or no metric names were specified.
+     *
+     * @param input
+     * @return
+     */
     public boolean hasMetric(String input) {
-        return metricNamesSet != null && metricNamesSet.contains(input);
+        return metricNamesSet.isEmpty() || metricNamesSet.contains(input);
+    }
+
+    /**
+     * Whether any of the metrics supported by the Meter needs to be measured, see
+     * {@link #getMeasuredMetricNamesSet()}.
+     *
+     * @param meter
+     * @return
+     */
+    public boolean hasMetricOf(Meter meter) {
+        for (Metric<?> metric : meter.supportedMetrics()) {
+            if (measuredMetricNamesSet.isEmpty() || measuredMetricNamesSet.contains(metric.getName())) {
+                return true;
+            }
+        }
+        return false;
     }
 }
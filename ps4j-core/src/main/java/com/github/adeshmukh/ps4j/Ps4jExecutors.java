@@ -0,0 +1,93 @@
+package com.github.adeshmukh.ps4j;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Factory for the executors that Ps4j creates when the caller does not supply one via
+ * {@link Ps4jConfig#setExecutor(ExecutorService)}.
+ *
+ * @author adeshmukh
+ */
+final class Ps4jExecutors {
+    private static final Logger log = LoggerFactory.getLogger(Ps4jExecutors.class);
+
+    private static final long KEEP_ALIVE_SECS = 60;
+
+    private Ps4jExecutors() {}
+
+    static ExecutorService newExecutor(Ps4jConfig.ThreadMode mode) {
+        if (mode == Ps4jConfig.ThreadMode.VIRTUAL) {
+            ExecutorService executor = newVirtualThreadPerTaskExecutor();
+            if (executor != null) {
+                return executor;
+            }
+        }
+        return newPlatformExecutor();
+    }
+
+    /**
+     * Pool of daemon threads capped at the number of available processors. Idle threads time out so that an embedded
+     * Ps4j instance that is sampled infrequently does not hold on to them.
+     *
+     * @return
+     */
+    static ThreadPoolExecutor newPlatformExecutor() {
+        int cores = maxPoolSize();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(cores, cores, KEEP_ALIVE_SECS, SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ps4j-%d").build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Resize the pool to use the specified number of threads, bounded by [1, number of available processors].
+     *
+     * @param executor
+     * @param numThreads
+     */
+    static void resize(ThreadPoolExecutor executor, int numThreads) {
+        int size = Math.max(1, Math.min(numThreads, maxPoolSize()));
+        if (size == executor.getCorePoolSize()) {
+            return;
+        }
+        // core size must never exceed max size while adjusting
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    private static int maxPoolSize() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Use reflection to see if virtual threads are available (requires JDK21+).
+     *
+     * @return the executor, or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Exception e) {
+            log.warn("Virtual threads are not available in this VM, falling back to platform threads");
+        }
+        return null;
+    }
+}
@@ -1,7 +1,15 @@
 package com.github.adeshmukh.ps4j;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import sun.jvmstat.monitor.MonitorException;
 import sun.jvmstat.monitor.MonitoredHost;
 import sun.jvmstat.monitor.MonitoredVm;
@@ -12,14 +20,26 @@ import com.google.common.base.Throwables;
 /**
  * Task that wraps the invocations to the available {@link Meter} implementations.
  * Allows concurrent execution when measuring multiple VMs.
+ * <p>
+ * A task created with a {@link VmAttachments} leaves the VM attached after measuring it, so that subsequent tasks for
+ * the same VM can reuse the attachment. Otherwise the task attaches and detaches on each call.
  *
  * @author adeshmukh
  */
 @SuppressWarnings("restriction")
 public class Ps4jTask implements Callable<Record> {
+    private static final Logger log = LoggerFactory.getLogger(Ps4jTask.class);
+
     private MonitoredHost monitoredHost;
+    private VmAttachments attachments;
     private VmIdentifier vmId;
     private Iterable<Meter> meters;
+    private Deadline sweepDeadline = Deadline.NONE;
+    private long vmTimeoutMillis;
+    private Set<String> metricNames = Collections.emptySet();
+    private RecordPredicate predicate;
+    private MeterScheduler scheduler;
+    private volatile Record record;
 
     public Ps4jTask(MonitoredHost monitoredHost, VmIdentifier vmid, Iterable<Meter> meters) {
         this.monitoredHost = monitoredHost;
@@ -27,18 +47,47 @@ public class Ps4jTask implements Callable<Record> {
         this.meters = meters;
     }
 
+    /**
+     * @param attachments
+     *            attachments shared with the other tasks of the sweep, so that the VM stays attached afterwards
+     * @param vmid
+     * @param meters
+     *            Meters to run, in increasing order of cost, expected to be only the ones that contribute at least one
+     *            requested metric
+     * @param metricNames
+     *            names of the requested metrics, passed on to {@link SelectiveMeter}s; empty implies all
+     * @param predicate
+     *            condition on the Record, evaluated after each Meter, or null. Once the Record cannot meet it the
+     *            remaining Meters are skipped and {@link Record#NOOP} is returned.
+     * @param scheduler
+     *            runs the measurements according to the cost of the Meters
+     * @param sweepDeadline
+     *            deadline of the sweep that this task belongs to
+     * @param vmTimeoutMillis
+     *            time allowed for measuring the VM, counted from the start of the task; &lt;= 0 implies no limit
+     */
+    Ps4jTask(VmAttachments attachments, VmIdentifier vmid, Iterable<Meter> meters, Set<String> metricNames,
+            RecordPredicate predicate, MeterScheduler scheduler, Deadline sweepDeadline, long vmTimeoutMillis) {
+        this.attachments = attachments;
+        this.vmId = vmid;
+        this.meters = meters;
+        this.metricNames = metricNames;
+        this.predicate = predicate;
+        this.scheduler = scheduler;
+        this.sweepDeadline = sweepDeadline;
+        this.vmTimeoutMillis = vmTimeoutMillis;
+    }
+
     @Override
     public Record call() {
+        if (attachments != null) {
+            return callAttached();
+        }
         MonitoredVm vm = null;
         try {
             vm = monitoredHost.getMonitoredVm(vmId);
             if (vm != null) {
-				Record record = Record.create();
-				for (Meter meter : meters) {
-                    // TODO adeshmukh: qualify the map key with the Meter class that contributes it
-                    record.addAll(meter.measureData(vm));
-				}
-				return record;
+                return measure(vm);
             }
         } catch (MonitorException me) {
             Throwables.propagate(me);
@@ -48,6 +97,100 @@ public class Ps4jTask implements Callable<Record> {
         return Record.NOOP;
     }
 
+    private Record callAttached() {
+        boolean measured = false;
+        try {
+            MonitoredVm vm = attachments.attach(vmId);
+            if (vm != null) {
+                Record record = measure(vm);
+                measured = true;
+                return record;
+            }
+        } catch (MonitorException me) {
+            Throwables.propagate(me);
+        } finally {
+            if (!measured) {
+                attachments.release(vmId);
+            }
+        }
+        return Record.NOOP;
+    }
+
+    /**
+     * Snapshot of the measures collected so far, marked as timed out. Used when the task is abandoned at the sweep
+     * deadline.
+     *
+     * @return
+     */
+    public Record partialRecord() {
+        Record partial = Record.create(vmId.getLocalVmId());
+        Record current = record;
+        if (current != null) {
+            partial.addAll(current.getMeasures());
+        }
+        return partial.markTimedOut();
+    }
+
+    private Record measure(MonitoredVm vm) {
+        Deadline deadline = sweepDeadline.min(Deadline.after(vmTimeoutMillis, MILLISECONDS));
+        record = Record.create(vmId.getLocalVmId());
+        Deadline.setCurrent(deadline);
+        try {
+            for (Meter meter : meters) {
+                if (deadline.isExpired() || Thread.currentThread().isInterrupted()) {
+                    log.debug("Deadline expired for vm [{}] before running {}", vmId.getLocalVmId(), meter.getClass().getName());
+                    return record.markTimedOut();
+                }
+                // TODO adeshmukh: qualify the map key with the Meter class that contributes it
+                if (scheduler != null) {
+                    Collection<? extends Measure<?>> measures = scheduler.call(meter, newMeasureCall(meter, vm), deadline);
+                    if (measures == null) {
+                        log.debug("Deadline expired for vm [{}] waiting for {}", vmId.getLocalVmId(), meter.getClass().getName());
+                        return record.markTimedOut();
+                    }
+                    record.addAll(measures);
+                } else {
+                    record.addAll(measureData(meter, vm));
+                }
+                if (predicate != null && predicate.evaluate(record) == RecordPredicate.Result.FALSE) {
+                    log.debug("Vm [{}] rejected after {}", vmId.getLocalVmId(), meter.getClass().getName());
+                    return Record.NOOP;
+                }
+            }
+            return record;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return record.markTimedOut();
+        } finally {
+            Deadline.clearCurrent();
+        }
+    }
+
+    private Collection<? extends Measure<?>> measureData(Meter meter, MonitoredVm vm) {
+        if (meter instanceof SelectiveMeter) {
+            return ((SelectiveMeter) meter).measureData(vm, metricNames);
+        }
+        return meter.measureData(vm);
+    }
+
+    /**
+     * The Deadline of the task is carried over to the thread that runs the measurement.
+     */
+    private Callable<Collection<? extends Measure<?>>> newMeasureCall(final Meter meter, final MonitoredVm vm) {
+        final Deadline deadline = Deadline.current();
+        return new Callable<Collection<? extends Measure<?>>>() {
+            @Override
+            public Collection<? extends Measure<?>> call() {
+                Deadline.setCurrent(deadline);
+                try {
+                    return measureData(meter, vm);
+                } finally {
+                    Deadline.clearCurrent();
+                }
+            }
+        };
+    }
+
     private void detachQuietly(MonitoredHost monitoredHost, MonitoredVm vm) {
         try {
             monitoredHost.detach(vm);
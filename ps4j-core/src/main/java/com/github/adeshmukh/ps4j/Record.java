@@ -16,11 +16,18 @@ public class Record {
     /**
      * Special instance indicating that the Record does not contain any useable data.
      */
-    public static final Record NOOP = new Record();
+    public static final Record NOOP = new Record(-1);
+
+    private final int vmId;
 
     private Collection<Measure<?>> measures;
 
-	private Record() {
+    private ImmutableList<? extends Measure<?>> snapshot;
+
+    private volatile boolean timedOut;
+
+	private Record(int vmId) {
+        this.vmId = vmId;
         measures = Lists.newArrayList();
 	}
 
@@ -30,32 +37,76 @@ public class Record {
      * @return
      */
 	public static Record create() {
-		return new Record();
+		return new Record(-1);
 	}
 
+    /**
+     * Factory method for a Record of the specified VM.
+     *
+     * @param vmId
+     *            local vm id (pid) of the measured VM
+     * @return
+     */
+    public static Record create(int vmId) {
+        return new Record(vmId);
+    }
+
+    /**
+     * Local vm id (pid) of the VM that this Record measures, or -1 if unknown.
+     *
+     * @return
+     */
+    public int getVmId() {
+        return vmId;
+    }
+
     /**
      * Add a Collection of Measure instances to this record. Expected to be invoked by a Meter.
      *
      * @param measures
      * @return
      */
-    public Record addAll(Iterable<? extends Measure<?>> measures) {
+    public synchronized Record addAll(Iterable<? extends Measure<?>> measures) {
         Iterables.addAll(this.measures, measures);
+        snapshot = null;
         return this;
 	}
 
     /**
      * Return an ImmutableList of Measures in this record. Expected to be invoked after all Meters have finished adding
-     * the measures.
+     * the measures. The list is copied only when measures were added since the previous call.
      * 
      * @return
      */
-    public ImmutableList<? extends Measure<?>> getMeasures() {
-        return ImmutableList.copyOf(measures);
+    public synchronized ImmutableList<? extends Measure<?>> getMeasures() {
+        if (snapshot == null) {
+            snapshot = ImmutableList.copyOf(measures);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Mark this record as incomplete because the measurement of its VM did not finish before its deadline.
+     *
+     * @return
+     */
+    public Record markTimedOut() {
+        timedOut = true;
+        return this;
+    }
+
+    /**
+     * Whether the measurement of the VM missed its deadline, in which case the record only contains the measures
+     * collected until then.
+     *
+     * @return
+     */
+    public boolean isTimedOut() {
+        return timedOut;
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return measures.toString();
     }
 }
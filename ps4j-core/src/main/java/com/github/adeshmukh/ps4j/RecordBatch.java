@@ -0,0 +1,440 @@
+package com.github.adeshmukh.ps4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The Records of a sweep stored by column: one row per VM and one column per metric. Columns of {@link LongMetric}s
+ * and {@link DoubleMetric}s hold their values in primitive arrays; other columns hold the Measures themselves.
+ * <p>
+ * Columns are looked up by the id that the {@link MetricRegistry} of the batch gives to their metric, so a consumer
+ * can resolve the metrics it needs once and then access any cell by index, without building a map per row. A
+ * RecordBatch is also an {@link Iterable} of {@link Record}s for consumers that process one VM at a time; those
+ * Records are created on the first iteration.
+ * <p>
+ * Instances are immutable once built, see {@link Builder}.
+ *
+ * @author adeshmukh
+ */
+public final class RecordBatch implements Iterable<Record> {
+
+    private static final byte KIND_LONG = 1;
+    private static final byte KIND_DOUBLE = 2;
+    private static final byte KIND_OBJECT = 3;
+
+    /**
+     * Values of a single metric, indexed by row. The kind is taken from the first measure added, and a column is
+     * converted to hold Measures if a later measure does not fit it.
+     */
+    private static final class Column {
+        final Metric<?> metric;
+        byte kind;
+        long[] longs;
+        double[] doubles;
+        Measure<?>[] objects;
+        final BitSet present = new BitSet();
+
+        Column(Metric<?> metric, Measure<?> first, int capacity) {
+            this.metric = metric;
+            if (first instanceof LongMeasure && metric instanceof LongMetric) {
+                kind = KIND_LONG;
+                longs = new long[capacity];
+            } else if (first instanceof DoubleMeasure && metric instanceof DoubleMetric) {
+                kind = KIND_DOUBLE;
+                doubles = new double[capacity];
+            } else {
+                kind = KIND_OBJECT;
+                objects = new Measure<?>[capacity];
+            }
+        }
+
+        void set(int row, Measure<?> measure) {
+            if (kind == KIND_LONG && !(measure instanceof LongMeasure) || kind == KIND_DOUBLE
+                    && !(measure instanceof DoubleMeasure)) {
+                toObjects();
+            }
+            ensureCapacity(row + 1);
+            switch (kind) {
+            case KIND_LONG:
+                longs[row] = ((LongMeasure) measure).longValue();
+                break;
+            case KIND_DOUBLE:
+                doubles[row] = ((DoubleMeasure) measure).doubleValue();
+                break;
+            default:
+                objects[row] = measure;
+            }
+            present.set(row);
+        }
+
+        Measure<?> get(int row) {
+            if (!present.get(row)) {
+                return null;
+            }
+            switch (kind) {
+            case KIND_LONG:
+                return ((LongMetric) metric).newMeasure(longs[row]);
+            case KIND_DOUBLE:
+                return ((DoubleMetric) metric).newMeasure(doubles[row]);
+            default:
+                return objects[row];
+            }
+        }
+
+        private void toObjects() {
+            Measure<?>[] measures = new Measure<?>[capacity()];
+            for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+                measures[row] = get(row);
+            }
+            objects = measures;
+            longs = null;
+            doubles = null;
+            kind = KIND_OBJECT;
+        }
+
+        private int capacity() {
+            return kind == KIND_LONG ? longs.length : (kind == KIND_DOUBLE ? doubles.length : objects.length);
+        }
+
+        private void ensureCapacity(int rows) {
+            int capacity = capacity();
+            if (rows <= capacity) {
+                return;
+            }
+            int newCapacity = Math.max(rows, capacity * 2);
+            switch (kind) {
+            case KIND_LONG:
+                longs = Arrays.copyOf(longs, newCapacity);
+                break;
+            case KIND_DOUBLE:
+                doubles = Arrays.copyOf(doubles, newCapacity);
+                break;
+            default:
+                objects = Arrays.copyOf(objects, newCapacity);
+            }
+        }
+    }
+
+    private final MetricRegistry registry;
+    private final long timestamp;
+    private final int size;
+    private final int[] vmIds;
+    private final BitSet timedOut;
+    private final Column[] columns;
+    private final int[] columnsById;
+    private final List<Metric<?>> metrics;
+    private volatile List<Record> records;
+
+    private RecordBatch(Builder builder) {
+        this.registry = builder.registry;
+        this.timestamp = builder.timestamp;
+        this.size = builder.size;
+        this.vmIds = Arrays.copyOf(builder.vmIds, builder.size);
+        this.timedOut = (BitSet) builder.timedOut.clone();
+        this.columns = Arrays.copyOf(builder.columns, builder.numColumns);
+        this.columnsById = Arrays.copyOf(builder.columnsById, builder.columnsById.length);
+        ImmutableList.Builder<Metric<?>> metrics = ImmutableList.builder();
+        for (Column column : columns) {
+            metrics.add(column.metric);
+        }
+        this.metrics = metrics.build();
+    }
+
+    /**
+     * Copy the Records into a new batch with its own registry.
+     *
+     * @param records
+     * @return the records themselves if they already are a RecordBatch
+     */
+    public static RecordBatch copyOf(Iterable<Record> records) {
+        if (records instanceof RecordBatch) {
+            return (RecordBatch) records;
+        }
+        Builder builder = builder(new MetricRegistry());
+        for (Record record : records) {
+            builder.add(record);
+        }
+        return builder.build();
+    }
+
+    public static Builder builder(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Time of the sweep, in millis since the epoch.
+     *
+     * @return
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Number of rows, i.e. of VMs.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Local vm id (pid) of the VM of the row.
+     *
+     * @param row
+     * @return
+     */
+    public int getVmId(int row) {
+        checkElementIndex(row, size);
+        return vmIds[row];
+    }
+
+    /**
+     * @param row
+     * @return whether the measurement of the VM of the row missed its deadline, see {@link Record#isTimedOut()}
+     */
+    public boolean isTimedOut(int row) {
+        checkElementIndex(row, size);
+        return timedOut.get(row);
+    }
+
+    /**
+     * The metrics of the columns, in the order in which they first appeared in the Records.
+     *
+     * @return
+     */
+    public List<Metric<?>> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metricId
+     *            id given to the metric by the registry of this batch
+     * @return the index of the column of the metric, or -1 if no row has a measure of it
+     */
+    public int columnOf(int metricId) {
+        return metricId >= 0 && metricId < columnsById.length ? columnsById[metricId] : -1;
+    }
+
+    /**
+     * @param metricName
+     * @return the index of the column of the metric, or -1 if no row has a measure of it
+     */
+    public int columnOf(String metricName) {
+        return columnOf(registry.idOf(metricName));
+    }
+
+    /**
+     * @param row
+     * @param column
+     * @return whether the row has a measure of the metric of the column
+     */
+    public boolean isPresent(int row, int column) {
+        checkElementIndex(row, size);
+        return columns[column].present.get(row);
+    }
+
+    /**
+     * @param row
+     * @param column
+     *            a column of a {@link LongMetric}
+     * @return the value, or 0 if the row has no measure of the metric
+     */
+    public long getLong(int row, int column) {
+        checkElementIndex(row, size);
+        Column c = columns[column];
+        if (c.kind == KIND_LONG) {
+            return c.present.get(row) ? c.longs[row] : 0;
+        }
+        Measure<?> measure = c.get(row);
+        return measure == null ? 0 : ((Number) measure.getValue()).longValue();
+    }
+
+    /**
+     * @param row
+     * @param column
+     *            a column of a numeric metric
+     * @return the value, or NaN if the row has no measure of the metric
+     */
+    public double getDouble(int row, int column) {
+        checkElementIndex(row, size);
+        Column c = columns[column];
+        if (!c.present.get(row)) {
+            return Double.NaN;
+        }
+        switch (c.kind) {
+        case KIND_LONG:
+            return c.longs[row];
+        case KIND_DOUBLE:
+            return c.doubles[row];
+        default:
+            return ((Number) c.objects[row].getValue()).doubleValue();
+        }
+    }
+
+    /**
+     * The measure of the cell. Measures of primitive columns are created by their metric on each call.
+     *
+     * @param row
+     * @param column
+     * @return the measure, or null if the row has no measure of the metric
+     */
+    public Measure<?> getMeasure(int row, int column) {
+        checkElementIndex(row, size);
+        return columns[column].get(row);
+    }
+
+    /**
+     * @param row
+     * @return the Record of the row
+     */
+    public Record getRecord(int row) {
+        return records().get(row);
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return records().iterator();
+    }
+
+    private List<Record> records() {
+        List<Record> retval = records;
+        if (retval == null) {
+            retval = new AbstractList<Record>() {
+                private final Record[] rows = new Record[size];
+
+                @Override
+                public synchronized Record get(int row) {
+                    checkElementIndex(row, size);
+                    if (rows[row] == null) {
+                        rows[row] = newRecord(row);
+                    }
+                    return rows[row];
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            records = retval;
+        }
+        return retval;
+    }
+
+    private Record newRecord(int row) {
+        Record record = Record.create(vmIds[row]);
+        ImmutableList.Builder<Measure<?>> measures = ImmutableList.builder();
+        for (Column column : columns) {
+            Measure<?> measure = column.get(row);
+            if (measure != null) {
+                measures.add(measure);
+            }
+        }
+        record.addAll(measures.build());
+        return timedOut.get(row) ? record.markTimedOut() : record;
+    }
+
+    @Override
+    public String toString() {
+        return ImmutableList.copyOf(this).toString();
+    }
+
+    /**
+     * Builds a RecordBatch one Record at a time. The batch shares the columns of its Builder, so a Builder cannot be
+     * used after {@link #build()}. Not safe for use by multiple threads.
+     */
+    public static final class Builder {
+        private final MetricRegistry registry;
+        private long timestamp = System.currentTimeMillis();
+        private int size;
+        private int[] vmIds = new int[16];
+        private final BitSet timedOut = new BitSet();
+        private Column[] columns = new Column[16];
+        private int numColumns;
+        private int[] columnsById = new int[0];
+        private boolean built;
+
+        private Builder(MetricRegistry registry) {
+            checkArgument(registry != null, "registry cannot be null");
+            this.registry = registry;
+        }
+
+        /**
+         * Set the time of the sweep, which defaults to the time the Builder was created.
+         *
+         * @param timestamp
+         *            millis since the epoch
+         * @return
+         */
+        public Builder timestamp(long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        /**
+         * Append the Record as a new row.
+         *
+         * @param record
+         * @return
+         */
+        public Builder add(Record record) {
+            checkState(!built, "batch already built");
+            if (size == vmIds.length) {
+                vmIds = Arrays.copyOf(vmIds, size * 2);
+            }
+            int row = size++;
+            vmIds[row] = record.getVmId();
+            if (record.isTimedOut()) {
+                timedOut.set(row);
+            }
+            for (Measure<?> measure : record.getMeasures()) {
+                column(measure).set(row, measure);
+            }
+            return this;
+        }
+
+        private Column column(Measure<?> measure) {
+            int id = registry.register(measure.getMetric());
+            if (id >= columnsById.length) {
+                int length = columnsById.length;
+                columnsById = Arrays.copyOf(columnsById, Math.max(id + 1, registry.size()));
+                Arrays.fill(columnsById, length, columnsById.length, -1);
+            }
+            int index = columnsById[id];
+            if (index < 0) {
+                if (numColumns == columns.length) {
+                    columns = Arrays.copyOf(columns, numColumns * 2);
+                }
+                index = numColumns++;
+                columns[index] = new Column(measure.getMetric(), measure, Math.max(vmIds.length, 16));
+                columnsById[id] = index;
+            }
+            return columns[index];
+        }
+
+        public RecordBatch build() {
+            checkState(!built, "batch already built");
+            built = true;
+            return new RecordBatch(this);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.adeshmukh.ps4j;
+
+/**
+ * Callback for receiving Records as soon as they are measured, see {@link Ps4j#measure(RecordListener)}.
+ *
+ * @author adeshmukh
+ */
+public interface RecordListener {
+
+    /**
+     * Invoked once for each VM whose measurement completed, in the order of completion.
+     *
+     * @param record
+     */
+    void recordMeasured(Record record);
+}
@@ -0,0 +1,106 @@
+package com.github.adeshmukh.ps4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Orders Records by the values of one or more metrics, e.g. <code>heapUse,-totGcTime</code> for ascending heap usage
+ * and then descending gc time. Measures are compared with {@link Measure#compareTo(Object)}, i.e. on their typed values
+ * rather than their display values, so that <code>9k</code> sorts before <code>10m</code>.
+ * <p>
+ * Records lacking a measure, or with a null value, sort after all others whatever the direction. Records that are
+ * equal on all the metrics are ordered by vm id.
+ *
+ * @author adeshmukh
+ */
+public final class RecordOrdering implements Comparator<Record> {
+
+    private final String[] metricNames;
+    private final boolean[] descending;
+
+    private RecordOrdering(String[] metricNames, boolean[] descending) {
+        this.metricNames = metricNames;
+        this.descending = descending;
+    }
+
+    /**
+     * @param spec
+     *            comma separated metric names, each optionally prefixed with <code>-</code> for descending or
+     *            <code>+</code> for ascending order
+     * @return
+     */
+    public static RecordOrdering parse(String spec) {
+        checkArgument(!Strings.isNullOrEmpty(spec), "spec cannot be null or empty");
+        List<String> keys = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(spec);
+        checkArgument(!keys.isEmpty(), "no sort keys in \"%s\"", spec);
+        String[] metricNames = new String[keys.size()];
+        boolean[] descending = new boolean[keys.size()];
+        for (int i = 0; i < metricNames.length; i++) {
+            String key = keys.get(i);
+            descending[i] = key.startsWith("-");
+            metricNames[i] = key.startsWith("-") || key.startsWith("+") ? key.substring(1) : key;
+            checkArgument(!metricNames[i].isEmpty(), "missing metric name in \"%s\"", spec);
+        }
+        return new RecordOrdering(metricNames, descending);
+    }
+
+    /**
+     * Names of the metrics compared, in order of precedence.
+     *
+     * @return
+     */
+    public List<String> getMetricNames() {
+        return ImmutableList.copyOf(metricNames);
+    }
+
+    @Override
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public int compare(Record r0, Record r1) {
+        for (int i = 0; i < metricNames.length; i++) {
+            Measure m0 = find(r0, metricNames[i]);
+            Measure m1 = find(r1, metricNames[i]);
+            int c;
+            if (m0 == null) {
+                c = m1 == null ? 0 : 1;
+            } else if (m1 == null) {
+                c = -1;
+            } else {
+                c = descending[i] ? m1.compareTo(m0) : m0.compareTo(m1);
+            }
+            if (c != 0) {
+                return c;
+            }
+        }
+        return r0.getVmId() < r1.getVmId() ? -1 : (r0.getVmId() == r1.getVmId() ? 0 : 1);
+    }
+
+    /**
+     * @return the measure of the metric, or null if the record has none with a value
+     */
+    private static Measure<?> find(Record record, String metricName) {
+        for (Measure<?> measure : record.getMeasures()) {
+            if (metricName.equals(measure.getMetric().getName())) {
+                boolean primitive = measure instanceof LongMeasure || measure instanceof DoubleMeasure;
+                return primitive || measure.getValue() != null ? measure : null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        List<String> keys = new ArrayList<String>(metricNames.length);
+        for (int i = 0; i < metricNames.length; i++) {
+            keys.add(descending[i] ? "-" + metricNames[i] : metricNames[i]);
+        }
+        return Joiner.on(',').join(keys);
+    }
+}
@@ -0,0 +1,372 @@
+package com.github.adeshmukh.ps4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.common.base.Strings;
+
+/**
+ * A condition on the measures of a Record, e.g. <code>heapUse &gt; 2g &amp;&amp; vmName ~ Server</code>.
+ * <p>
+ * Comparisons take the form <code>metric op value</code> with the operators <code>&gt; &gt;= &lt; &lt;= == !=</code>
+ * and <code>~ !~</code> for a regular expression found in the value. They can be combined with <code>&amp;&amp;</code>,
+ * <code>||</code>, <code>!</code> and parentheses. Numeric measures are compared with numbers, which may carry the
+ * <code>k</code>, <code>m</code>, <code>g</code> or <code>t</code> suffix of their display value, and so are textual
+ * measures that parse as numbers, such as the fields of <code>ps</code>; other measures are compared as text. Values containing spaces or operators can be quoted with <code>'</code> or <code>"</code>.
+ * <p>
+ * A Record is evaluated to {@link Result#UNKNOWN} as long as it lacks a measure that decides the outcome, so that a
+ * partially measured Record can be rejected as soon as it is certain not to match.
+ *
+ * @author adeshmukh
+ */
+public abstract class RecordPredicate {
+
+    /**
+     * Outcome of the evaluation of a Record, in three-valued logic.
+     */
+    public static enum Result {
+        TRUE, FALSE, UNKNOWN;
+
+        static Result of(boolean b) {
+            return b ? TRUE : FALSE;
+        }
+    }
+
+    private String spec;
+
+    RecordPredicate() {}
+
+    /**
+     * @param spec
+     *            the expression, see the class description
+     * @return
+     * @throws IllegalArgumentException
+     *             if the expression cannot be parsed
+     */
+    public static RecordPredicate parse(String spec) {
+        checkArgument(!Strings.isNullOrEmpty(spec), "spec cannot be null or empty");
+        Parser parser = new Parser(spec);
+        RecordPredicate retval = parser.parseOr();
+        parser.skipSpaces();
+        checkArgument(parser.pos == spec.length(), "unexpected \"%s\" in \"%s\"", spec.substring(parser.pos), spec);
+        retval.spec = spec;
+        return retval;
+    }
+
+    /**
+     * @param record
+     * @return UNKNOWN if the outcome depends on measures missing from the Record
+     */
+    public abstract Result evaluate(Record record);
+
+    /**
+     * Names of the metrics the predicate refers to.
+     *
+     * @return
+     */
+    public Set<String> getMetricNames() {
+        Set<String> retval = new LinkedHashSet<String>();
+        addMetricNames(retval);
+        return Collections.unmodifiableSet(retval);
+    }
+
+    abstract void addMetricNames(Set<String> metricNames);
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+    private static final class And extends RecordPredicate {
+        private final RecordPredicate left;
+        private final RecordPredicate right;
+
+        And(RecordPredicate left, RecordPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Result evaluate(Record record) {
+            Result l = left.evaluate(record);
+            if (l == Result.FALSE) {
+                return l;
+            }
+            Result r = right.evaluate(record);
+            return r == Result.FALSE || l == Result.TRUE ? r : l;
+        }
+
+        @Override
+        void addMetricNames(Set<String> metricNames) {
+            left.addMetricNames(metricNames);
+            right.addMetricNames(metricNames);
+        }
+    }
+
+    private static final class Or extends RecordPredicate {
+        private final RecordPredicate left;
+        private final RecordPredicate right;
+
+        Or(RecordPredicate left, RecordPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Result evaluate(Record record) {
+            Result l = left.evaluate(record);
+            if (l == Result.TRUE) {
+                return l;
+            }
+            Result r = right.evaluate(record);
+            return r == Result.TRUE || l == Result.FALSE ? r : l;
+        }
+
+        @Override
+        void addMetricNames(Set<String> metricNames) {
+            left.addMetricNames(metricNames);
+            right.addMetricNames(metricNames);
+        }
+    }
+
+    private static final class Not extends RecordPredicate {
+        private final RecordPredicate operand;
+
+        Not(RecordPredicate operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public Result evaluate(Record record) {
+            Result r = operand.evaluate(record);
+            return r == Result.UNKNOWN ? r : Result.of(r == Result.FALSE);
+        }
+
+        @Override
+        void addMetricNames(Set<String> metricNames) {
+            operand.addMetricNames(metricNames);
+        }
+    }
+
+    private static final class Comparison extends RecordPredicate {
+        private final String metricName;
+        private final String op;
+        private final String text;
+        private final double number;
+        private final Pattern pattern;
+
+        Comparison(String metricName, String op, String text) {
+            this.metricName = metricName;
+            this.op = op;
+            this.text = text;
+            this.number = parseNumber(text);
+            if (op.endsWith("~")) {
+                try {
+                    this.pattern = Pattern.compile(text);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("invalid pattern \"" + text + "\": " + e.getDescription());
+                }
+            } else {
+                this.pattern = null;
+            }
+        }
+
+        @Override
+        public Result evaluate(Record record) {
+            Measure<?> measure = find(record);
+            if (measure == null) {
+                return Result.UNKNOWN;
+            }
+            if (pattern != null) {
+                boolean found = pattern.matcher(textOf(measure)).find();
+                return Result.of(op.equals("~") == found);
+            }
+            int c;
+            if (!Double.isNaN(number) && isNumeric(measure)) {
+                double value = doubleOf(measure);
+                if (Double.isNaN(value)) {
+                    return Result.FALSE;
+                }
+                c = Double.compare(value, number);
+            } else {
+                String value = textOf(measure);
+                double parsed = Double.isNaN(number) ? Double.NaN : parseNumber(value.trim());
+                c = Double.isNaN(parsed) ? value.compareTo(text) : Double.compare(parsed, number);
+            }
+            if (op.equals(">")) {
+                return Result.of(c > 0);
+            }
+            if (op.equals(">=")) {
+                return Result.of(c >= 0);
+            }
+            if (op.equals("<")) {
+                return Result.of(c < 0);
+            }
+            if (op.equals("<=")) {
+                return Result.of(c <= 0);
+            }
+            if (op.equals("==")) {
+                return Result.of(c == 0);
+            }
+            return Result.of(c != 0);
+        }
+
+        @Override
+        void addMetricNames(Set<String> metricNames) {
+            metricNames.add(metricName);
+        }
+
+        private Measure<?> find(Record record) {
+            for (Measure<?> measure : record.getMeasures()) {
+                if (metricName.equals(measure.getMetric().getName())) {
+                    return measure;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isNumeric(Measure<?> measure) {
+            return measure instanceof LongMeasure || measure instanceof DoubleMeasure || measure.getValue() instanceof Number;
+        }
+
+        private static double doubleOf(Measure<?> measure) {
+            if (measure instanceof LongMeasure) {
+                return ((LongMeasure) measure).longValue();
+            }
+            if (measure instanceof DoubleMeasure) {
+                return ((DoubleMeasure) measure).doubleValue();
+            }
+            return ((Number) measure.getValue()).doubleValue();
+        }
+
+        private static String textOf(Measure<?> measure) {
+            Object value = measure.getValue();
+            return value instanceof String ? (String) value : measure.getDisplayValue();
+        }
+
+        /**
+         * @return the number, or NaN if the text is not a number
+         */
+        private static double parseNumber(String text) {
+            if (text.isEmpty()) {
+                return Double.NaN;
+            }
+            double scale = 1;
+            switch (Character.toLowerCase(text.charAt(text.length() - 1))) {
+            case 'k':
+                scale = 1e3;
+                break;
+            case 'm':
+                scale = 1e6;
+                break;
+            case 'g':
+                scale = 1e9;
+                break;
+            case 't':
+                scale = 1e12;
+                break;
+            default:
+            }
+            try {
+                return Double.parseDouble(scale == 1 ? text : text.substring(0, text.length() - 1)) * scale;
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Recursive descent parser, with <code>&amp;&amp;</code> binding tighter than <code>||</code>.
+     */
+    private static final class Parser {
+        private static final String[] OPERATORS = { ">=", "<=", "==", "!=", "!~", ">", "<", "~" };
+
+        private final String spec;
+        private int pos;
+
+        Parser(String spec) {
+            this.spec = spec;
+        }
+
+        RecordPredicate parseOr() {
+            RecordPredicate retval = parseAnd();
+            while (consume("||")) {
+                retval = new Or(retval, parseAnd());
+            }
+            return retval;
+        }
+
+        RecordPredicate parseAnd() {
+            RecordPredicate retval = parseUnary();
+            while (consume("&&")) {
+                retval = new And(retval, parseUnary());
+            }
+            return retval;
+        }
+
+        RecordPredicate parseUnary() {
+            if (consume("(")) {
+                RecordPredicate retval = parseOr();
+                checkArgument(consume(")"), "missing ) in \"%s\"", spec);
+                return retval;
+            }
+            if (consume("!")) {
+                return new Not(parseUnary());
+            }
+            String metricName = parseWord();
+            checkArgument(!metricName.isEmpty(), "missing metric name at %s in \"%s\"", pos, spec);
+            for (String op : OPERATORS) {
+                if (consume(op)) {
+                    return new Comparison(metricName, op, parseValue());
+                }
+            }
+            throw new IllegalArgumentException("missing operator after " + metricName + " in \"" + spec + "\"");
+        }
+
+        private String parseWord() {
+            skipSpaces();
+            int start = pos;
+            while (pos < spec.length() && Character.isJavaIdentifierPart(spec.charAt(pos))) {
+                pos++;
+            }
+            return spec.substring(start, pos);
+        }
+
+        private String parseValue() {
+            skipSpaces();
+            if (pos < spec.length() && (spec.charAt(pos) == '\'' || spec.charAt(pos) == '"')) {
+                int end = spec.indexOf(spec.charAt(pos), pos + 1);
+                checkArgument(end > 0, "unterminated quote in \"%s\"", spec);
+                String retval = spec.substring(pos + 1, end);
+                pos = end + 1;
+                return retval;
+            }
+            int start = pos;
+            while (pos < spec.length() && !Character.isWhitespace(spec.charAt(pos)) && "()&|".indexOf(spec.charAt(pos)) < 0) {
+                pos++;
+            }
+            checkArgument(pos > start, "missing value at %s in \"%s\"", start, spec);
+            return spec.substring(start, pos);
+        }
+
+        private boolean consume(String token) {
+            skipSpaces();
+            if (spec.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        void skipSpaces() {
+            while (pos < spec.length() && Character.isWhitespace(spec.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.adeshmukh.ps4j;
+
+import java.util.Collection;
+import java.util.Set;
+
+import sun.jvmstat.monitor.MonitoredVm;
+
+/**
+ * A {@link Meter} that can restrict its measurement to the metrics that were actually requested, so that a narrow
+ * query does not pay for computing (or forking processes for) metrics that will be discarded.
+ * <p>
+ * Ps4j does not invoke a Meter at all if none of its supported metrics are requested; a SelectiveMeter is additionally
+ * told which of its metrics to measure.
+ *
+ * @author adeshmukh
+ */
+@SuppressWarnings("restriction")
+public interface SelectiveMeter extends Meter {
+
+    /**
+     * Measure only the requested metrics.
+     *
+     * @param vm
+     * @param metricNames
+     *            names of the requested metrics, which may include metrics of other Meters. An empty set implies all
+     *            metrics.
+     * @return
+     */
+    Collection<? extends Measure<?>> measureData(MonitoredVm vm, Set<String> metricNames);
+}
@@ -0,0 +1,61 @@
+package com.github.adeshmukh.ps4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes a single sweep to the {@link BatchMeter}s taking part in it.
+ *
+ * @author adeshmukh
+ */
+public final class SweepContext {
+
+    private final int sweep;
+    private final List<Integer> vmIds;
+    private final Set<String> metricNames;
+    private final Deadline deadline;
+
+    /**
+     * @param sweep
+     *            sequence number of the sweep, starting at 1
+     * @param vmIds
+     *            local ids (pids) of the VMs measured in the sweep
+     * @param metricNames
+     *            names of the requested metrics; empty implies all
+     * @param deadline
+     *            deadline of the sweep
+     */
+    public SweepContext(int sweep, List<Integer> vmIds, Set<String> metricNames, Deadline deadline) {
+        this.sweep = sweep;
+        this.vmIds = Collections.unmodifiableList(vmIds);
+        this.metricNames = metricNames;
+        this.deadline = deadline;
+    }
+
+    public int getSweep() {
+        return sweep;
+    }
+
+    public List<Integer> getVmIds() {
+        return vmIds;
+    }
+
+    /**
+     * Names of the requested metrics, which may include metrics of other Meters. An empty set implies all metrics.
+     *
+     * @return
+     */
+    public Set<String> getMetricNames() {
+        return metricNames;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    @Override
+    public String toString() {
+        return "sweep " + sweep + " of " + vmIds;
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.adeshmukh.ps4j;
+
+/**
+ * Callback for receiving the Records of each sweep when Ps4j is sampling continuously, see
+ * {@link Ps4j#watch(long, java.util.concurrent.TimeUnit, int, SweepListener)}.
+ *
+ * @author adeshmukh
+ */
+public interface SweepListener {
+
+    /**
+     * Invoked from the sampling thread after each sweep over the active VMs has completed.
+     *
+     * @param sweep
+     *            1-based sequence number of the sweep
+     * @param records
+     *            the Records measured in this sweep, passed by Ps4j as a {@link RecordBatch}
+     */
+    void sweepCompleted(int sweep, Iterable<Record> records);
+}
@@ -0,0 +1,109 @@
+package com.github.adeshmukh.ps4j;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredHost;
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.VmIdentifier;
+
+/**
+ * Keeps {@link MonitoredVm} attachments open across successive sweeps so that repeated sampling of the same VMs does
+ * not pay for an attach/detach on every sweep. Attachments for VMs that are no longer active are released by
+ * {@link #retain(Collection)}.
+ * <p>
+ * Instances are safe for use by concurrent {@link Ps4jTask}s, as long as a given VM is attached by at most one task at a
+ * time.
+ *
+ * @author adeshmukh
+ */
+@SuppressWarnings("restriction")
+public class VmAttachments {
+    private static final Logger log = LoggerFactory.getLogger(VmAttachments.class);
+
+    private final MonitoredHost monitoredHost;
+    private final ConcurrentMap<Integer, MonitoredVm> attached = new ConcurrentHashMap<Integer, MonitoredVm>();
+
+    public VmAttachments(MonitoredHost monitoredHost) {
+        this.monitoredHost = monitoredHost;
+    }
+
+    /**
+     * Return the open attachment for the VM, attaching to it if this is the first request for it.
+     *
+     * @param vmId
+     * @return
+     * @throws MonitorException
+     */
+    public MonitoredVm attach(VmIdentifier vmId) throws MonitorException {
+        Integer key = vmId.getLocalVmId();
+        MonitoredVm vm = attached.get(key);
+        if (vm == null) {
+            vm = monitoredHost.getMonitoredVm(vmId);
+            MonitoredVm existing = attached.putIfAbsent(key, vm);
+            if (existing != null) {
+                detachQuietly(vm);
+                vm = existing;
+            }
+        }
+        return vm;
+    }
+
+    /**
+     * Drop the attachment for the VM, e.g. after a failed measurement, so that the next request attaches afresh.
+     *
+     * @param vmId
+     */
+    public void release(VmIdentifier vmId) {
+        detachQuietly(attached.remove(vmId.getLocalVmId()));
+    }
+
+    /**
+     * Detach from every VM that is not in the specified collection of active VMs.
+     *
+     * @param activeVmIds
+     */
+    public void retain(Collection<VmIdentifier> activeVmIds) {
+        Set<Integer> active = new HashSet<Integer>();
+        for (VmIdentifier vmId : activeVmIds) {
+            active.add(vmId.getLocalVmId());
+        }
+        for (Iterator<Map.Entry<Integer, MonitoredVm>> it = attached.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, MonitoredVm> entry = it.next();
+            if (!active.contains(entry.getKey())) {
+                log.debug("Detaching from exited vm [{}]", entry.getKey());
+                it.remove();
+                detachQuietly(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Detach from all VMs.
+     */
+    public void close() {
+        for (Iterator<MonitoredVm> it = attached.values().iterator(); it.hasNext();) {
+            MonitoredVm vm = it.next();
+            it.remove();
+            detachQuietly(vm);
+        }
+    }
+
+    private void detachQuietly(MonitoredVm vm) {
+        if (vm == null) {
+            return;
+        }
+        try {
+            monitoredHost.detach(vm);
+        } catch (Exception e) {}
+    }
+}
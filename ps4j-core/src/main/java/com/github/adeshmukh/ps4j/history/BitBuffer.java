@@ -0,0 +1,88 @@
+package com.github.adeshmukh.ps4j.history;
+
+import java.util.Arrays;
+
+/**
+ * Growable sequence of bits packed into a <code>long[]</code>, most significant bit first.
+ *
+ * @author adeshmukh
+ */
+final class BitBuffer {
+
+    private long[] words;
+    private int size;
+
+    BitBuffer(int initialWords) {
+        words = new long[Math.max(1, initialWords)];
+    }
+
+    /**
+     * Append the low <code>numBits</code> bits of the value.
+     *
+     * @param value
+     * @param numBits
+     *            in the range [1, 64]
+     */
+    void write(long value, int numBits) {
+        if (size + numBits > (long) words.length * 64) {
+            words = Arrays.copyOf(words, words.length + Math.max(1, words.length / 2));
+        }
+        if (numBits < 64) {
+            value &= (1L << numBits) - 1;
+        }
+        int index = size >>> 6;
+        int used = size & 63;
+        int free = 64 - used;
+        if (numBits <= free) {
+            words[index] |= value << (free - numBits);
+        } else {
+            words[index] |= value >>> (numBits - free);
+            words[index + 1] |= value << (64 - (numBits - free));
+        }
+        size += numBits;
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Release the unused capacity, once no more bits will be written.
+     */
+    void trim() {
+        int numWords = (size + 63) >>> 6;
+        if (numWords < words.length) {
+            words = Arrays.copyOf(words, Math.max(1, numWords));
+        }
+    }
+
+    int sizeInBytes() {
+        return words.length * 8;
+    }
+
+    Reader reader() {
+        return new Reader();
+    }
+
+    final class Reader {
+        private int position;
+
+        long read(int numBits) {
+            int index = position >>> 6;
+            int used = position & 63;
+            int free = 64 - used;
+            long value;
+            if (numBits <= free) {
+                value = words[index] >>> (free - numBits);
+            } else {
+                value = (words[index] << (numBits - free)) | (words[index + 1] >>> (64 - (numBits - free)));
+            }
+            position += numBits;
+            return numBits == 64 ? value : value & ((1L << numBits) - 1);
+        }
+
+        boolean readBit() {
+            return read(1) != 0;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.adeshmukh.ps4j.history;
+
+/**
+ * A run of consecutive points of a single series, compressed as described in "Gorilla: A Fast, Scalable, In-Memory
+ * Time Series Database" (Pelkonen et al., VLDB 2015):
+ * <ul>
+ * <li>timestamps as the difference between successive deltas, which is 0 for a fixed sampling rate and takes a single
+ * bit</li>
+ * <li>values as the XOR with the previous value, of which only the meaningful bits are stored, taking a single bit for
+ * an unchanged value</li>
+ * </ul>
+ * A chunk is written until it holds {@link #MAX_POINTS} points or its VM exits, after which it is closed and only
+ * read.
+ *
+ * @author adeshmukh
+ */
+final class Chunk {
+
+    static final int MAX_POINTS = 240;
+
+    /**
+     * Estimated size of the object headers and fields of a chunk, on top of its bits.
+     */
+    private static final int OVERHEAD_BYTES = 96;
+
+    final Series series;
+    private final BitBuffer bits = new BitBuffer(4);
+    private int count;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private long lastDelta;
+    private long lastValueBits;
+    private int lastLeading = Integer.MAX_VALUE;
+    private int lastTrailing;
+    private boolean closed;
+
+    Chunk(Series series) {
+        this.series = series;
+    }
+
+    int count() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= MAX_POINTS;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    int sizeInBytes() {
+        return bits.sizeInBytes() + OVERHEAD_BYTES;
+    }
+
+    void close() {
+        bits.trim();
+        closed = true;
+    }
+
+    void append(long timestamp, double value) {
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            bits.write(timestamp, 64);
+            bits.write(valueBits, 64);
+        } else {
+            long delta = timestamp - lastTimestamp;
+            writeDeltaOfDelta(delta - lastDelta);
+            writeXor(valueBits ^ lastValueBits);
+            lastDelta = delta;
+        }
+        lastTimestamp = timestamp;
+        lastValueBits = valueBits;
+        count++;
+    }
+
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            bits.write(0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            bits.write(0x2, 2);
+            bits.write(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            bits.write(0x6, 3);
+            bits.write(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            bits.write(0xE, 4);
+            bits.write(dod, 12);
+        } else {
+            bits.write(0xF, 4);
+            bits.write(dod, 64);
+        }
+    }
+
+    private void writeXor(long xor) {
+        if (xor == 0) {
+            bits.write(0, 1);
+            return;
+        }
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (leading >= lastLeading && trailing >= lastTrailing) {
+            // fits in the window of meaningful bits of the previous value
+            bits.write(0x2, 2);
+            bits.write(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+        } else {
+            int meaningful = 64 - leading - trailing;
+            bits.write(0x3, 2);
+            bits.write(leading, 5);
+            bits.write(meaningful & 63, 6); // 64 is written as 0
+            bits.write(xor >>> trailing, meaningful);
+            lastLeading = leading;
+            lastTrailing = trailing;
+        }
+    }
+
+    /**
+     * Decode the points into the arrays, starting at the specified offset.
+     */
+    void read(long[] timestamps, double[] values, int offset) {
+        BitBuffer.Reader reader = bits.reader();
+        long timestamp = 0;
+        long delta = 0;
+        long valueBits = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                timestamp = reader.read(64);
+                valueBits = reader.read(64);
+            } else {
+                delta += readDeltaOfDelta(reader);
+                timestamp += delta;
+                if (reader.readBit()) {
+                    if (reader.readBit()) {
+                        leading = (int) reader.read(5);
+                        int meaningful = (int) reader.read(6);
+                        if (meaningful == 0) {
+                            meaningful = 64;
+                        }
+                        trailing = 64 - leading - meaningful;
+                    }
+                    valueBits ^= reader.read(64 - leading - trailing) << trailing;
+                }
+            }
+            timestamps[offset + i] = timestamp;
+            values[offset + i] = Double.longBitsToDouble(valueBits);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitBuffer.Reader reader) {
+        if (!reader.readBit()) {
+            return 0;
+        }
+        if (!reader.readBit()) {
+            return signExtend(reader.read(7), 7);
+        }
+        if (!reader.readBit()) {
+            return signExtend(reader.read(9), 9);
+        }
+        if (!reader.readBit()) {
+            return signExtend(reader.read(12), 12);
+        }
+        return reader.read(64);
+    }
+
+    private static long signExtend(long value, int numBits) {
+        return (value << (64 - numBits)) >> (64 - numBits);
+    }
+}
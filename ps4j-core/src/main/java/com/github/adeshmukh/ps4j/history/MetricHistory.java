@@ -0,0 +1,192 @@
+package com.github.adeshmukh.ps4j.history;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.adeshmukh.ps4j.DoubleMeasure;
+import com.github.adeshmukh.ps4j.LongMeasure;
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.RecordListener;
+import com.github.adeshmukh.ps4j.SweepListener;
+import com.github.adeshmukh.ps4j.perfdata.VmDiscoveryListener;
+
+/**
+ * In-memory history of the numeric measures of each VM, compressed to a few bits per point (see {@link Chunk}) and
+ * bounded in size.
+ * <p>
+ * The points of each series are stored in chunks of up to {@link Chunk#MAX_POINTS} points. When the history grows
+ * beyond its maximum size, the closed chunks are evicted in the order in which they were closed, i.e. oldest first.
+ * The chunk that a series is still writing is only closed once it is full or the VM exits, so the history should be
+ * registered with {@link com.github.adeshmukh.ps4j.Ps4j#addVmDiscoveryListener(VmDiscoveryListener)} when VMs come
+ * and go.
+ * <p>
+ * As a {@link SweepListener}, all the Records of a sweep are stored with the same timestamp, which compresses better
+ * than the time at which each Record was measured.
+ *
+ * @author adeshmukh
+ */
+public class MetricHistory implements RecordListener, SweepListener, VmDiscoveryListener {
+
+    private final long maxBytes;
+    private final Map<Integer, Map<String, Series>> series = new HashMap<Integer, Map<String, Series>>();
+    private final LinkedList<Chunk> closedChunks = new LinkedList<Chunk>();
+    private long sizeInBytes;
+
+    /**
+     * @param maxBytes
+     *            approximate limit on the memory used by the history
+     */
+    public MetricHistory(long maxBytes) {
+        checkArgument(maxBytes > 0, "maxBytes must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Approximate memory used by the stored points.
+     *
+     * @return
+     */
+    public synchronized long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public void recordMeasured(Record record) {
+        add(record, System.currentTimeMillis());
+    }
+
+    @Override
+    public void sweepCompleted(int sweep, Iterable<Record> records) {
+        long timestamp = System.currentTimeMillis();
+        for (Record record : records) {
+            add(record, timestamp);
+        }
+    }
+
+    @Override
+    public void vmStarted(int vmId, long timestamp) {}
+
+    /**
+     * Close the chunks of the VM, so that they can be evicted.
+     */
+    @Override
+    public synchronized void vmExited(int vmId, long timestamp) {
+        Map<String, Series> vmSeries = series.get(vmId);
+        if (vmSeries != null) {
+            for (Series s : vmSeries.values()) {
+                close(s);
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Store the numeric measures of the record. Other measures are ignored.
+     *
+     * @param record
+     * @param timestamp
+     *            millis since the epoch
+     */
+    public synchronized void add(Record record, long timestamp) {
+        Map<String, Series> vmSeries = series.get(record.getVmId());
+        if (vmSeries == null) {
+            vmSeries = new HashMap<String, Series>();
+            series.put(record.getVmId(), vmSeries);
+        }
+        for (Measure<?> measure : record.getMeasures()) {
+            double value;
+            if (measure instanceof LongMeasure) {
+                value = ((LongMeasure) measure).longValue();
+            } else if (measure instanceof DoubleMeasure) {
+                value = ((DoubleMeasure) measure).doubleValue();
+            } else if (measure.getValue() instanceof Number) {
+                value = ((Number) measure.getValue()).doubleValue();
+            } else {
+                continue;
+            }
+            String metricName = measure.getMetric().getName();
+            Series s = vmSeries.get(metricName);
+            if (s == null) {
+                s = new Series(record.getVmId(), metricName);
+                vmSeries.put(metricName, s);
+            }
+            long before = s.sizeInBytes();
+            Chunk closed = s.append(timestamp, value);
+            sizeInBytes += s.sizeInBytes() - before;
+            if (closed != null) {
+                closedChunks.addLast(closed);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * @param vmId
+     * @param metricName
+     * @return all stored points of the metric, or null if there are none
+     */
+    public TimeSeries get(int vmId, String metricName) {
+        return get(vmId, metricName, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param vmId
+     * @param metricName
+     * @param from
+     *            earliest timestamp, inclusive
+     * @param to
+     *            latest timestamp, inclusive
+     * @return the stored points of the metric in the time range, or null if there are none
+     */
+    public synchronized TimeSeries get(int vmId, String metricName, long from, long to) {
+        Map<String, Series> vmSeries = series.get(vmId);
+        Series s = vmSeries == null ? null : vmSeries.get(metricName);
+        return s == null ? null : s.read(from, to);
+    }
+
+    public synchronized Set<Integer> getVmIds() {
+        return new HashSet<Integer>(series.keySet());
+    }
+
+    public synchronized Set<String> getMetricNames(int vmId) {
+        Map<String, Series> vmSeries = series.get(vmId);
+        return vmSeries == null ? Collections.<String> emptySet() : new HashSet<String>(vmSeries.keySet());
+    }
+
+    private void close(Series s) {
+        long before = s.sizeInBytes();
+        Chunk closed = s.close();
+        sizeInBytes += s.sizeInBytes() - before;
+        if (closed != null) {
+            closedChunks.addLast(closed);
+        }
+    }
+
+    private void evict() {
+        while (sizeInBytes > maxBytes && !closedChunks.isEmpty()) {
+            Chunk chunk = closedChunks.removeFirst();
+            Series s = chunk.series;
+            long before = s.sizeInBytes();
+            s.remove(chunk);
+            sizeInBytes += s.sizeInBytes() - before;
+            if (s.count() == 0) {
+                Map<String, Series> vmSeries = series.get(s.vmId);
+                vmSeries.remove(s.metricName);
+                if (vmSeries.isEmpty()) {
+                    series.remove(s.vmId);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.adeshmukh.ps4j.history;
+
+import java.util.LinkedList;
+
+/**
+ * The chunks of a single metric of a single VM, oldest first.
+ *
+ * @author adeshmukh
+ */
+final class Series {
+
+    final int vmId;
+    final String metricName;
+    final LinkedList<Chunk> chunks = new LinkedList<Chunk>();
+    private int count;
+    private long sizeInBytes;
+
+    Series(int vmId, String metricName) {
+        this.vmId = vmId;
+        this.metricName = metricName;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Append a point, returning the chunk that was closed to make room for it, if any.
+     */
+    Chunk append(long timestamp, double value) {
+        Chunk closed = null;
+        Chunk open = chunks.peekLast();
+        if (open != null && open.isFull()) {
+            closed = close();
+            open = null;
+        }
+        if (open == null || open.isClosed()) {
+            open = new Chunk(this);
+            chunks.addLast(open);
+            sizeInBytes += open.sizeInBytes();
+        }
+        int before = open.sizeInBytes();
+        open.append(timestamp, value);
+        sizeInBytes += open.sizeInBytes() - before;
+        count++;
+        return closed;
+    }
+
+    /**
+     * Close the chunk being written, so that the next point starts a new one.
+     *
+     * @return the closed chunk, or null if there is none
+     */
+    Chunk close() {
+        Chunk open = chunks.peekLast();
+        if (open == null || open.isClosed()) {
+            return null;
+        }
+        int before = open.sizeInBytes();
+        open.close();
+        sizeInBytes += open.sizeInBytes() - before;
+        return open;
+    }
+
+    void remove(Chunk chunk) {
+        if (chunks.remove(chunk)) {
+            count -= chunk.count();
+            sizeInBytes -= chunk.sizeInBytes();
+        }
+    }
+
+    TimeSeries read(long from, long to) {
+        long[] timestamps = new long[count];
+        double[] values = new double[count];
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.lastTimestamp() >= from && chunk.firstTimestamp() <= to) {
+                chunk.read(timestamps, values, offset);
+                offset += chunk.count();
+            }
+        }
+        return TimeSeries.of(metricName, timestamps, values, offset, from, to);
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.adeshmukh.ps4j.history;
+
+import java.util.Arrays;
+
+/**
+ * The points of a metric of a VM read from a {@link MetricHistory}, in the order of their timestamps.
+ *
+ * @author adeshmukh
+ */
+public final class TimeSeries {
+
+    private final String metricName;
+    private final long[] timestamps;
+    private final double[] values;
+
+    private TimeSeries(String metricName, long[] timestamps, double[] values) {
+        this.metricName = metricName;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    /**
+     * The points among the first <code>length</code> whose timestamp is in [from, to].
+     */
+    static TimeSeries of(String metricName, long[] timestamps, double[] values, int length, long from, long to) {
+        int start = 0;
+        while (start < length && timestamps[start] < from) {
+            start++;
+        }
+        int end = length;
+        while (end > start && timestamps[end - 1] > to) {
+            end--;
+        }
+        if (start == 0 && end == timestamps.length) {
+            return new TimeSeries(metricName, timestamps, values);
+        }
+        return new TimeSeries(metricName, Arrays.copyOfRange(timestamps, start, end),
+                Arrays.copyOfRange(values, start, end));
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * @param index
+     * @return time of the sample, in millis since the epoch
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+}
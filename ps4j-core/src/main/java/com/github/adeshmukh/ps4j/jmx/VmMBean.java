@@ -0,0 +1,155 @@
+package com.github.adeshmukh.ps4j.jmx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+import com.github.adeshmukh.ps4j.DoubleMeasure;
+import com.github.adeshmukh.ps4j.DoubleMetric;
+import com.github.adeshmukh.ps4j.LongMeasure;
+import com.github.adeshmukh.ps4j.LongMetric;
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.Record;
+
+/**
+ * Exposes the latest Record of a VM as read-only attributes, one per metric, described by
+ * {@link Metric#getDescription()}. Numbers, strings, booleans and dates keep their type; other values are exposed as
+ * their display value.
+ * <p>
+ * The values and the attribute descriptions of a Record are held together in an immutable snapshot that
+ * {@link #update(Record)} replaces as a whole, so that reads see a single sweep and never touch the VM.
+ *
+ * @author adeshmukh
+ */
+final class VmMBean implements DynamicMBean {
+
+    private static final MBeanAttributeInfo[] NO_ATTRIBUTES = new MBeanAttributeInfo[0];
+
+    private final int vmId;
+    private volatile Snapshot snapshot;
+
+    private static final class Snapshot {
+        final Map<String, Object> values;
+        final MBeanInfo info;
+
+        Snapshot(Map<String, Object> values, MBeanInfo info) {
+            this.values = values;
+            this.info = info;
+        }
+    }
+
+    VmMBean(int vmId, Record record) {
+        this.vmId = vmId;
+        update(record);
+    }
+
+    /**
+     * Replace the snapshot with the measures of the Record. The description of the attributes is kept if they are
+     * unchanged.
+     *
+     * @param record
+     */
+    void update(Record record) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (Measure<?> measure : record.getMeasures()) {
+            Metric<?> metric = measure.getMetric();
+            Object value = valueOf(measure);
+            values.put(metric.getName(), value);
+            attributes.add(new MBeanAttributeInfo(metric.getName(), typeOf(measure, value), metric.getDescription(),
+                    true, false, false));
+        }
+        MBeanAttributeInfo[] attributeInfos = attributes.toArray(NO_ATTRIBUTES);
+        Snapshot previous = snapshot;
+        MBeanInfo info;
+        if (previous != null && Arrays.equals(previous.info.getAttributes(), attributeInfos)) {
+            info = previous.info;
+        } else {
+            info = new MBeanInfo(getClass().getName(), "Latest measures of VM " + vmId, attributeInfos, null, null,
+                    null);
+        }
+        snapshot = new Snapshot(Collections.unmodifiableMap(values), info);
+    }
+
+    private static Object valueOf(Measure<?> measure) {
+        if (measure instanceof LongMeasure) {
+            return ((LongMeasure) measure).longValue();
+        }
+        if (measure instanceof DoubleMeasure) {
+            return ((DoubleMeasure) measure).doubleValue();
+        }
+        Object value = measure.getValue();
+        if (value == null || value instanceof Number || value instanceof String || value instanceof Boolean
+                || value instanceof Date) {
+            return value;
+        }
+        return measure.getDisplayValue();
+    }
+
+    private static String typeOf(Measure<?> measure, Object value) {
+        if (value != null) {
+            return value.getClass().getName();
+        }
+        if (measure.getMetric() instanceof LongMetric) {
+            return Long.class.getName();
+        }
+        if (measure.getMetric() instanceof DoubleMetric) {
+            return Double.class.getName();
+        }
+        return String.class.getName();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Map<String, Object> values = snapshot.values;
+        if (!values.containsKey(attribute)) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return values.get(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> values = snapshot.values;
+        AttributeList retval = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute)) {
+                retval.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return retval;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Attribute " + attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return snapshot.info;
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.adeshmukh.ps4j.jmx;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.SweepListener;
+
+/**
+ * Registers one MBean per VM, named <code>com.github.adeshmukh.ps4j:type=Vm,pid=&lt;pid&gt;</code>, exposing the
+ * measures of its latest Record as attributes, see {@link VmMBean}. The MBeans are updated after each sweep, so that
+ * JMX clients read the measures of a whole host through one connection and without attaching to the VMs.
+ * <p>
+ * The MBean of a VM that is missing from a sweep, e.g. because it exited, is unregistered. All MBeans are unregistered
+ * on {@link #close()}.
+ *
+ * @author adeshmukh
+ */
+public class VmMBeanExporter implements SweepListener, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(VmMBeanExporter.class);
+
+    public static final String DOMAIN = "com.github.adeshmukh.ps4j";
+
+    private final MBeanServer server;
+    private final Map<Integer, VmMBean> mbeans = new HashMap<Integer, VmMBean>();
+
+    /**
+     * Export to the platform MBeanServer.
+     */
+    public VmMBeanExporter() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public VmMBeanExporter(MBeanServer server) {
+        this.server = server;
+    }
+
+    /**
+     * @param vmId
+     * @return the name of the MBean of the VM
+     */
+    public static ObjectName objectName(int vmId) {
+        try {
+            return new ObjectName(DOMAIN + ":type=Vm,pid=" + vmId);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public synchronized void sweepCompleted(int sweep, Iterable<Record> records) {
+        Set<Integer> measured = new HashSet<Integer>();
+        for (Record record : records) {
+            int vmId = record.getVmId();
+            if (vmId < 0) {
+                continue;
+            }
+            measured.add(vmId);
+            VmMBean mbean = mbeans.get(vmId);
+            if (mbean != null) {
+                mbean.update(record);
+                continue;
+            }
+            mbean = new VmMBean(vmId, record);
+            try {
+                server.registerMBean(mbean, objectName(vmId));
+                mbeans.put(vmId, mbean);
+            } catch (JMException e) {
+                log.warn("Error registering the MBean of vm [" + vmId + "]", e);
+            }
+        }
+        for (Iterator<Entry<Integer, VmMBean>> it = mbeans.entrySet().iterator(); it.hasNext();) {
+            int vmId = it.next().getKey();
+            if (!measured.contains(vmId)) {
+                unregister(vmId);
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (int vmId : mbeans.keySet()) {
+            unregister(vmId);
+        }
+        mbeans.clear();
+    }
+
+    private void unregister(int vmId) {
+        try {
+            server.unregisterMBean(objectName(vmId));
+        } catch (JMException e) {
+            log.warn("Error unregistering the MBean of vm [" + vmId + "]", e);
+        }
+    }
+}
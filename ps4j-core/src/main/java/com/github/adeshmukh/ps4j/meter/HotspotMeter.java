@@ -1,436 +1,324 @@
 package com.github.adeshmukh.ps4j.meter;
 
-import static com.google.common.collect.Collections2.filter;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Lists.transform;
-import static com.google.common.collect.Maps.transformValues;
-import static com.google.common.collect.Maps.uniqueIndex;
 import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
+import sun.jvmstat.monitor.LongMonitor;
 import sun.jvmstat.monitor.Monitor;
+import sun.jvmstat.monitor.MonitorException;
 import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.StringMonitor;
+import sun.jvmstat.monitor.Variability;
 
+import com.github.adeshmukh.ps4j.CostedMeter;
+import com.github.adeshmukh.ps4j.DoubleMetric;
+import com.github.adeshmukh.ps4j.LongMetric;
 import com.github.adeshmukh.ps4j.Measure;
-import com.github.adeshmukh.ps4j.Meter;
+import com.github.adeshmukh.ps4j.MeterCost;
 import com.github.adeshmukh.ps4j.Metric;
-import com.github.adeshmukh.ps4j.metric.AutoScalingMetric;
+import com.github.adeshmukh.ps4j.SelectiveMeter;
+import com.github.adeshmukh.ps4j.metric.AutoScalingDoubleMetric;
 import com.github.adeshmukh.ps4j.metric.SimpleMetric;
 import com.github.adeshmukh.ps4j.metric.TimeMetric;
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 /**
  * Meter implementation that measures data using the hotspot performance counters (introduced for Java5+ VMs).
+ * <p>
+ * The counters needed by the metrics are resolved once per attached VM into a {@link Binding}, so that each sample
+ * reads the counters directly instead of looking them up by name. Metrics whose counters the VM declares
+ * {@link Variability#CONSTANT}, e.g. the vm name or the max capacities of the heap, are read only once per VM into
+ * its {@link Constants} and not bound at all.
  *
  * @author adeshmukh
  */
 @SuppressWarnings("restriction")
-public class HotspotMeter implements Meter {
+public class HotspotMeter implements SelectiveMeter, CostedMeter {
 
-    private static Function<Monitor, String> GET_NAME = new Function<Monitor, String>() {
-        @Override
-        public String apply(Monitor m) {
-            return m.getName();
-        }
-    };
+    private static final String HRT_FREQUENCY = "sun.os.hrt.frequency";
+    private static final String VM_BEGIN_TIME = "sun.rt.createVmBeginTime";
 
-    private static final Function<Monitor, Number> GET_LONG_VALUE = new Function<Monitor, Number>() {
-        @Override
-        public Number apply(Monitor input) {
-            return (Number) input.getValue();
-        }
-    };
-
-    private static final Function<Monitor, Number> GET_NUM_VALUE = new Function<Monitor, Number>() {
-        @Override
-        public Number apply(Monitor input) {
-            return (Number) input.getValue();
-        }
-    };
-
-    private static final Function<Monitor, String> GET_STRING_VALUE = new Function<Monitor, String>() {
-        @Override
-        public String apply(Monitor input) {
-            String s = String.valueOf(input.getValue());
-            return s;
-        }
-    };
+    private static final long CONSTANTS_EXPIRY_MINUTES = 10;
 
     private static enum StringMetricMonitor {
-        vmVersion() {
-            private Metric<String> m = new SimpleMetric<String>(name(), "vm version string");
-
-            @Override
-            public Metric<String> metric() {
-                return m;
-            }
-
-            @Override
-            public String value(Map<String, String> m) {
-                return m.get("java.property.java.vm.version");
-            }
-        },
-        vmName() {
-            private Metric<String> m = new SimpleMetric<String>(name(), "vm name");
-
-            @Override
-            public Metric<String> metric() {
-                return m;
-            }
-
-            @Override
-            public String value(Map<String, String> m) {
-                return m.get("java.property.java.vm.name");
-            }
-        },
-        vmVendor() {
-            private Metric<String> m = new SimpleMetric<String>(name(), "vm vendor");
-
-            @Override
-            public Metric<String> metric() {
-                return m;
-            }
-
-            @Override
-            public String value(Map<String, String> m) {
-                return m.get("java.property.java.vm.vendor");
+        vmVersion("vm version string", "java.property.java.vm.version"),
+        vmName("vm name", "java.property.java.vm.name"),
+        vmVendor("vm vendor", "java.property.java.vm.vendor"),
+        mainClass("main class, or jar file", "sun.rt.javaCommand") {
+            /**
+             * The command is the main class or jar followed by the arguments. Only the name of the jar is kept.
+             */
+            @Override
+            public String value(StringMonitor monitor) {
+                String command = super.value(monitor);
+                if (command == null) {
+                    return null;
+                }
+                command = command.trim();
+                int end = command.indexOf(' ');
+                String main = end < 0 ? command : command.substring(0, end);
+                if (!main.endsWith(".jar")) {
+                    return main;
+                }
+                return main.substring(Math.max(main.lastIndexOf('/'), main.lastIndexOf('\\')) + 1);
             }
         };
 
-        public abstract Metric<String> metric();
+        private final Metric<String> m;
+        private final String counter;
+
+        private StringMetricMonitor(String description, String counter) {
+            this.m = new SimpleMetric<String>(name(), description);
+            this.counter = counter;
+        }
 
-        public abstract String value(Map<String, String> m);
+        public Metric<String> metric() {
+            return m;
+        }
 
+        public String value(StringMonitor monitor) {
+            return monitor == null ? null : monitor.stringValue();
+        }
     }
 
+    /**
+     * Metrics computed as the sum of one or more counters. A missing counter contributes -1.
+     */
     private static enum DoubleMetricMonitor {
+        edenMax("eden gen max", "sun.gc.generation.0.space.0.maxCapacity"),
+        edenCap("eden gen current capacity", "sun.gc.generation.0.space.0.capacity"),
+        edenUse("current eden usage", "sun.gc.generation.0.space.0.used"),
+        sur0Max("survivor 1 gen current capacity", "sun.gc.generation.0.space.1.maxCapacity"),
+        sur1Cap("survivor 1 gen current capacity", "sun.gc.generation.0.space.1.capacity"),
+        sur1Use("current survivor 1 gen usage", "sun.gc.generation.0.space.1.used"),
+        sur2Max("survivor 2 max capacity", "sun.gc.generation.0.space.1.maxCapacity"),
+        sur2Cap("survivor 2 current capacity", "sun.gc.generation.0.space.1.capacity"),
+        sur2Use("survivor 2 current usage", "sun.gc.generation.0.space.1.used"),
+        oldgMax("eden gen current capacity", "sun.gc.generation.1.maxCapacity"),
+        oldgCap("old gen current capacity", "sun.gc.generation.1.capacity"),
+        oldgUse("current old gen usage", "sun.gc.generation.1.space.0.used"),
+        permMax("perm gen max", "sun.gc.generation.2.maxCapacity"),
+        permCap("perm gen current capacity", "sun.gc.generation.2.capacity"),
+        permUse("current perm gen usage", "sun.gc.generation.2.space.0.used"),
+        heapCap("max heap size"
+                , "sun.gc.generation.0.capacity"
+                , "sun.gc.generation.1.capacity"
+                , "sun.gc.generation.2.capacity"),
+        heapMax("current heap capacity"
+                , "sun.gc.generation.0.maxCapacity"
+                , "sun.gc.generation.1.maxCapacity"
+                , "sun.gc.generation.2.maxCapacity"),
+        heapUse("current heap usage"
+                , "sun.gc.generation.0.space.0.used"
+                , "sun.gc.generation.0.space.1.used"
+                , "sun.gc.generation.0.space.2.used"
+                , "sun.gc.generation.1.space.0.used"
+                , "sun.gc.generation.2.space.0.used");
+
+        private final DoubleMetric m;
+        private final String[] counters;
+
+        private DoubleMetricMonitor(String description, String... counters) {
+            this.m = new AutoScalingDoubleMetric(name(), description);
+            this.counters = counters;
+        }
 
-        edenMax() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "eden gen max");
-
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.0.maxCapacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        edenCap() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "eden gen current capacity");
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.0.capacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        edenUse() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "current eden usage");
-
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.0.used", -1);
-                return Double.valueOf(d);
-            }
-        },
-        sur0Max() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "survivor 1 gen current capacity");
-
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.1.maxCapacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        sur1Cap() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "survivor 1 gen current capacity");
-
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.1.capacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        sur1Use() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "current survivor 1 gen usage");
-
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.1.used", -1);
-                return Double.valueOf(d);
-            }
-        },
-        sur2Max() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "survivor 2 max capacity");
-
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.1.maxCapacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        sur2Cap() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "survivor 2 current capacity");
-
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.1.capacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        sur2Use() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "survivor 2 current usage");
+        public DoubleMetric metric() {
+            return m;
+        }
 
-            @Override
-            public Metric<Double> metric() {
-                return m;
+        public double value(LongMonitor[] monitors) {
+            double d = 0;
+            for (LongMonitor monitor : monitors) {
+                d += monitor == null ? -1 : monitor.longValue();
             }
+            return d;
+        }
+    }
 
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.1.used", -1);
-                return Double.valueOf(d);
-            }
-        },
-        oldgMax() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "eden gen current capacity");
+    /**
+     * Metrics computed as the sum of one or more tick counters, converted to seconds. A missing first counter
+     * contributes -1, any other missing counter contributes 0.
+     */
+    private static enum TimeMetricMonitor {
+        clsLoadTime("Time taken to load classes", "sun.cls.time"),
+        totGcTime("Total time spent in garbage collection", "sun.gc.collector.0.time", "sun.gc.collector.1.time"),
+        fullGcTime("Time spent for full garbage collection", "sun.gc.collector.1.time"),
+        yngGcTime("Time spent for young gen garbage collection", "sun.gc.collector.0.time"),
+        timestamp("Time since start of VM", "sun.os.hrt.ticks");
+
+        private final LongMetric m;
+        private final String[] counters;
+
+        private TimeMetricMonitor(String description, String... counters) {
+            this.m = new TimeMetric(name(), description);
+            this.counters = counters;
+        }
 
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
+        public LongMetric metric() {
+            return m;
+        }
 
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.1.maxCapacity", -1);
-                return Double.valueOf(d);
+        public long value(LongMonitor[] monitors, long frequency) {
+            long ticks = 0;
+            for (int i = 0; i < monitors.length; i++) {
+                ticks += monitors[i] == null ? (i == 0 ? -1 : 0) : monitors[i].longValue();
             }
-        },
-        oldgCap() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "old gen current capacity");
+            return ticks / frequency;
+        }
+    }
 
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
+    /**
+     * Identifies a VM across attachments. The start time tells apart processes that reuse a pid.
+     */
+    private static final class VmKey {
+        private final int pid;
+        private final long startTime;
 
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.1.capacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        oldgUse() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "current old gen usage");
+        VmKey(int pid, long startTime) {
+            this.pid = pid;
+            this.startTime = startTime;
+        }
 
-            @Override
-            public Metric<Double> metric() {
-                return m;
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof VmKey)) {
+                return false;
             }
+            VmKey other = (VmKey) obj;
+            return pid == other.pid && startTime == other.startTime;
+        }
 
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.1.space.0.used", -1);
-                return Double.valueOf(d);
-            }
-        },
-        permMax() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "perm gen max");
+        @Override
+        public int hashCode() {
+            return 31 * pid + (int) (startTime ^ (startTime >>> 32));
+        }
+    }
 
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
+    /**
+     * The values of the metrics of a single VM whose counters are all constant or missing, indexed by the ordinal of
+     * the metric. Metrics that have to be sampled are flagged as not constant, or NaN.
+     */
+    private static final class Constants {
+        private final boolean[] constantStrings = new boolean[StringMetricMonitor.values().length];
+        private final String[] strings = new String[StringMetricMonitor.values().length];
+        private final double[] doubles = new double[DoubleMetricMonitor.values().length];
+        private final long frequency;
+
+        Constants(MonitoredVm vm) throws MonitorException {
+            for (StringMetricMonitor mm : StringMetricMonitor.values()) {
+                StringMonitor monitor = Binding.bind(vm, mm.counter, StringMonitor.class);
+                if (isConstant(monitor)) {
+                    constantStrings[mm.ordinal()] = true;
+                    strings[mm.ordinal()] = mm.value(monitor);
+                }
+            }
+            for (DoubleMetricMonitor mm : DoubleMetricMonitor.values()) {
+                LongMonitor[] monitors = Binding.bindAll(vm, mm.counters);
+                boolean constant = true;
+                for (LongMonitor monitor : monitors) {
+                    constant &= isConstant(monitor);
+                }
+                doubles[mm.ordinal()] = constant ? mm.value(monitors) : Double.NaN;
+            }
+            LongMonitor monitor = Binding.bind(vm, HRT_FREQUENCY, LongMonitor.class);
+            frequency = monitor != null && isConstant(monitor) ? monitor.longValue() : -1;
+        }
 
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.2.maxCapacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        permCap() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "perm gen current capacity");
+        private static boolean isConstant(Monitor monitor) {
+            return monitor == null || monitor.getVariability() == Variability.CONSTANT;
+        }
+    }
 
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
+    /**
+     * The counters of a single VM that are needed by the metrics and are not constant, indexed by the ordinal of the
+     * metric.
+     */
+    private static final class Binding {
+        private final Constants constants;
+        private final StringMonitor[] strings = new StringMonitor[StringMetricMonitor.values().length];
+        private final LongMonitor[][] doubles = new LongMonitor[DoubleMetricMonitor.values().length][];
+        private final LongMonitor[][] times = new LongMonitor[TimeMetricMonitor.values().length][];
+        private final LongMonitor frequency;
+
+        Binding(MonitoredVm vm, Constants constants) throws MonitorException {
+            this.constants = constants;
+            for (StringMetricMonitor mm : StringMetricMonitor.values()) {
+                if (!constants.constantStrings[mm.ordinal()]) {
+                    strings[mm.ordinal()] = bind(vm, mm.counter, StringMonitor.class);
+                }
+            }
+            for (DoubleMetricMonitor mm : DoubleMetricMonitor.values()) {
+                if (Double.isNaN(constants.doubles[mm.ordinal()])) {
+                    doubles[mm.ordinal()] = bindAll(vm, mm.counters);
+                }
+            }
+            for (TimeMetricMonitor mm : TimeMetricMonitor.values()) {
+                times[mm.ordinal()] = bindAll(vm, mm.counters);
+            }
+            frequency = constants.frequency > 0 ? null : bind(vm, HRT_FREQUENCY, LongMonitor.class);
+        }
 
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.2.capacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        permUse() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "current perm gen usage");
+        String string(StringMetricMonitor mm) {
+            int i = mm.ordinal();
+            return constants.constantStrings[i] ? constants.strings[i] : mm.value(strings[i]);
+        }
 
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
+        double value(DoubleMetricMonitor mm) {
+            LongMonitor[] monitors = doubles[mm.ordinal()];
+            return monitors == null ? constants.doubles[mm.ordinal()] : mm.value(monitors);
+        }
 
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.2.space.0.used", -1);
-                return Double.valueOf(d);
-            }
-        },
-        heapCap() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "max heap size");
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.capacity", -1)
-                        + doubleValue(m, "sun.gc.generation.1.capacity", -1)
-                        + doubleValue(m, "sun.gc.generation.2.capacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        heapMax() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "current heap capacity");
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
+        long value(TimeMetricMonitor mm) {
+            long f = constants.frequency > 0 ? constants.frequency : (frequency == null ? 1 : frequency.longValue());
+            return mm.value(times[mm.ordinal()], f);
+        }
 
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.maxCapacity", -1)
-                        + doubleValue(m, "sun.gc.generation.1.maxCapacity", -1)
-                        + doubleValue(m, "sun.gc.generation.2.maxCapacity", -1);
-                return Double.valueOf(d);
-            }
-        },
-        heapUse() {
-            private final Metric<Double> m = new AutoScalingMetric<Double>(name(), "current heap usage");
-            @Override
-            public Metric<Double> metric() {
-                return m;
-            }
-            @Override
-            public Double value(Map<String, Number> m) {
-                double d = doubleValue(m, "sun.gc.generation.0.space.0.used", -1)
-                        + doubleValue(m, "sun.gc.generation.0.space.1.used", -1)
-                        + doubleValue(m, "sun.gc.generation.0.space.2.used", -1)
-                        + doubleValue(m, "sun.gc.generation.1.space.0.used", -1)
-                        + doubleValue(m, "sun.gc.generation.2.space.0.used", -1);
-                return Double.valueOf(d);
+        private static LongMonitor[] bindAll(MonitoredVm vm, String[] counters) throws MonitorException {
+            LongMonitor[] retval = new LongMonitor[counters.length];
+            for (int i = 0; i < counters.length; i++) {
+                retval[i] = bind(vm, counters[i], LongMonitor.class);
             }
-        };
-
-        public abstract Metric<Double> metric();
+            return retval;
+        }
 
-        public abstract Double value(Map<String, Number> m);
+        private static <M extends Monitor> M bind(MonitoredVm vm, String counter, Class<M> type) throws MonitorException {
+            Monitor monitor = vm.findByName(counter);
+            return type.isInstance(monitor) ? type.cast(monitor) : null;
+        }
     }
 
-    private static enum TimeMetricMonitor {
-        clsLoadTime() {
-            private Metric<Long> m = new TimeMetric(name(), "Time taken to load classes");
-            @Override
-            public Metric<Long> metric() {
-                return m;
-            }
-            @Override
-            public Long value(Map<String, Number> m) {
-                return longValue(m, "sun.cls.time", -1) / longValue(m, "sun.os.hrt.frequency", 1);
-            }
-        },
-        totGcTime() {
-            private Metric<Long> m = new TimeMetric(name(), "Total time spent in garbage collection");
-            @Override
-            public Metric<Long> metric() {
-                return m;
-            }
-            @Override
-            public Long value(Map<String, Number> m) {
-                return (longValue(m, "sun.gc.collector.0.time", -1) + longValue(m, "sun.gc.collector.1.time", 0))
-                        / longValue(m, "sun.os.hrt.frequency", 1);
-            }
-        },
-        fullGcTime() {
-            private Metric<Long> m = new TimeMetric(name(), "Time spent for full garbage collection");
-            @Override
-            public Metric<Long> metric() {
-                return m;
-            }
-            @Override
-            public Long value(Map<String, Number> m) {
-                return longValue(m, "sun.gc.collector.1.time", -1) / longValue(m, "sun.os.hrt.frequency", 1);
-            }
-        },
-        yngGcTime() {
-            private Metric<Long> m = new TimeMetric(name(), "Time spent for young gen garbage collection");
-            @Override
-            public Metric<Long> metric() {
-                return m;
-            }
-            @Override
-            public Long value(Map<String, Number> m) {
-                return longValue(m, "sun.gc.collector.0.time", -1) / longValue(m, "sun.os.hrt.frequency", 1);
-            }
-        },
-        timestamp() {
-            private Metric<Long> m = new TimeMetric(name(), "Time since start of VM");
-            @Override
-            public Metric<Long> metric() {
-                return m;
-            }
-            @Override
-            public Long value(Map<String, Number> m) {
-                return longValue(m, "sun.os.hrt.ticks", -1) / longValue(m, "sun.os.hrt.frequency", 1);
-            }
-        };
-
-        public abstract Metric<Long> metric();
-
-        public abstract Long value(Map<String, Number> m);
-    }
+    /**
+     * Constants are kept across attachments of the VM, until it has not been measured for a while.
+     */
+    private final Cache<VmKey, Constants> constants = CacheBuilder.newBuilder()
+            .expireAfterAccess(CONSTANTS_EXPIRY_MINUTES, MINUTES)
+            .build();
+
+    /**
+     * Bindings are kept for as long as the VM stays attached.
+     */
+    private final LoadingCache<MonitoredVm, Binding> bindings = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<MonitoredVm, Binding>() {
+                @Override
+                public Binding load(MonitoredVm vm) throws Exception {
+                    return new Binding(vm, constants(vm));
+                }
+            });
 
     private static final List<Metric<? extends Comparable<?>>> DOUBLE_METRICS =
             transform(asList(DoubleMetricMonitor.values())
@@ -459,12 +347,16 @@ public class HotspotMeter implements Meter {
                         }
                     });
 
-    private static Predicate<Monitor> NUMERIC_VALUE_FILTER = new Predicate<Monitor>() {
-        @Override
-        public boolean apply(Monitor input) {
-            return input.getValue() instanceof Number;
-        }
-    };
+    private Constants constants(final MonitoredVm vm) throws Exception {
+        LongMonitor beginTime = Binding.bind(vm, VM_BEGIN_TIME, LongMonitor.class);
+        VmKey key = new VmKey(vm.getVmIdentifier().getLocalVmId(), beginTime == null ? 0 : beginTime.longValue());
+        return constants.get(key, new Callable<Constants>() {
+            @Override
+            public Constants call() throws MonitorException {
+                return new Constants(vm);
+            }
+        });
+    }
 
     @Override
     public Collection<Metric<? extends Comparable<?>>> supportedMetrics() {
@@ -475,47 +367,63 @@ public class HotspotMeter implements Meter {
         return retval;
     }
 
+    @Override
+    public MeterCost getCost() {
+        return MeterCost.MEMORY;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return 0;
+    }
+
     @Override
     public List<Measure<? extends Comparable<?>>> measureData(MonitoredVm vm) {
+        return measureData(vm, Collections.<String> emptySet());
+    }
+
+    @Override
+    public List<Measure<? extends Comparable<?>>> measureData(MonitoredVm vm, Set<String> metricNames) {
         List<Measure<? extends Comparable<?>>> retval = new ArrayList<Measure<? extends Comparable<?>>>(30);
 
         try {
-            @SuppressWarnings("unchecked")
-            List<Monitor> monitors = vm.findByPattern(".*");
+            Binding binding = bindings.getUnchecked(vm);
 
-            processTimeMeasures(vm, monitors, retval);
-            processMiscMeasures(vm, monitors, retval);
-            processNumericMeasures(vm, monitors, retval);
+            processTimeMeasures(binding, metricNames, retval);
+            processMiscMeasures(binding, metricNames, retval);
+            processNumericMeasures(binding, metricNames, retval);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return retval;
     }
 
-    private void processTimeMeasures(MonitoredVm vm, List<Monitor> monitors, List<Measure<? extends Comparable<?>>> retval) {
-        Map<String, Number> m = transformValues(uniqueIndex(monitors, GET_NAME), GET_LONG_VALUE);
+    private static boolean isRequested(Metric<?> metric, Set<String> metricNames) {
+        return metricNames.isEmpty() || metricNames.contains(metric.getName());
+    }
 
+    private void processTimeMeasures(Binding binding, Set<String> metricNames, List<Measure<? extends Comparable<?>>> retval) {
         for (TimeMetricMonitor mm : TimeMetricMonitor.values()) {
-            Long d = mm.value(m);
-            retval.add(mm.metric().newMeasure(d));
+            if (isRequested(mm.metric(), metricNames)) {
+                retval.add(mm.metric().newMeasure(binding.value(mm)));
+            }
         }
     }
 
-    private void processMiscMeasures(MonitoredVm vm, List<Monitor> monitors, List<Measure<? extends Comparable<?>>> retval) {
-        Map<String, String> m = transformValues(uniqueIndex(monitors, GET_NAME), GET_STRING_VALUE);
-
+    private void processMiscMeasures(Binding binding, Set<String> metricNames, List<Measure<? extends Comparable<?>>> retval) {
         for (StringMetricMonitor mm : StringMetricMonitor.values()) {
-            String d = mm.value(m);
-            retval.add(mm.metric().newMeasure(d));
+            if (isRequested(mm.metric(), metricNames)) {
+                String d = binding.string(mm);
+                retval.add(mm.metric().newMeasure(d));
+            }
         }
     }
 
-    private void processNumericMeasures(MonitoredVm vm, List<Monitor> monitors, List<Measure<? extends Comparable<?>>> retval) {
-        Map<String, Number> m = transformValues(uniqueIndex(filter(monitors, NUMERIC_VALUE_FILTER), GET_NAME), GET_NUM_VALUE);
-
+    private void processNumericMeasures(Binding binding, Set<String> metricNames, List<Measure<? extends Comparable<?>>> retval) {
         for (DoubleMetricMonitor mm : DoubleMetricMonitor.values()) {
-            Double d = mm.value(m);
-            retval.add(mm.metric().newMeasure(d));
+            if (isRequested(mm.metric(), metricNames)) {
+                retval.add(mm.metric().newMeasure(binding.value(mm)));
+            }
         }
     }
 
@@ -586,23 +494,4 @@ public class HotspotMeter implements Meter {
     // return new AutoScalingMeasure<Long>("youngGcCnt", l);
     // }
     //
-
-    private static double doubleValue(Map<String, Number> m, String key, double defolt) {
-        try {
-            Number n = m.get(key);
-            return n.doubleValue();
-        } catch (Exception e) {
-        }
-        return defolt;
-    }
-
-    private static long longValue(Map<String, Number> m, String key, int defolt) {
-        try {
-            Number n = m.get(key);
-            return n.longValue();
-        } catch (Exception e) {
-        }
-        return defolt;
-    }
-
 }
@@ -1,39 +1,46 @@
 package com.github.adeshmukh.ps4j.meter;
 
-import static com.google.common.io.Closeables.closeQuietly;
-import static java.lang.String.valueOf;
 import static java.util.Collections.singletonList;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import sun.jvmstat.monitor.MonitoredVm;
 
+import com.github.adeshmukh.ps4j.AsyncBatchMeter;
+import com.github.adeshmukh.ps4j.CostedMeter;
 import com.github.adeshmukh.ps4j.Measure;
 import com.github.adeshmukh.ps4j.Meter;
+import com.github.adeshmukh.ps4j.MeterCost;
 import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.SweepContext;
 import com.github.adeshmukh.ps4j.metric.SimpleMetric;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * A {@link Meter} implementation that uses *nix networking utilities to get port usage
  * by the specified JVM.
+ * <p>
+ * Within a sweep, a single <code>lsof</code> process measures all VMs, without holding a thread while it runs.
  *
  * @author adeshmukh
  */
 @SuppressWarnings("restriction")
-public class OpenPortsMeter implements Meter {
-    private static final Logger log = LoggerFactory.getLogger(PsMeter.class);
+public class OpenPortsMeter implements AsyncBatchMeter, CostedMeter {
+    private static final Logger log = LoggerFactory.getLogger(OpenPortsMeter.class);
     private static final String EMPTY_VALUE = "-";
     private static final List<? extends Metric<String>> SUPPORTED_METRICS =
             singletonList(new SimpleMetric<String>("listenPorts", "ports of type TCP:LISTEN"));
@@ -50,49 +57,101 @@ public class OpenPortsMeter implements Meter {
         return SUPPORTED_METRICS;
     }
 
+    @Override
+    public MeterCost getCost() {
+        return MeterCost.PROCESS;
+    }
+
+    /**
+     * <code>lsof</code> walks the open files of every process it is given, so runs never overlap.
+     */
+    @Override
+    public int getMaxConcurrency() {
+        return 1;
+    }
+
     @Override
     public Collection<? extends Measure<?>> measureData(MonitoredVm vm) {
         int vmId = vm.getVmIdentifier().getLocalVmId();
-        InputStream is = null;
-        BufferedInputStream bis = null;
-        InputStreamReader isr = null;
-        BufferedReader br = null;
-        try {
-            ProcessBuilder pbuilder = new ProcessBuilder();
-            pbuilder.command(ImmutableList.<String> of("lsof" // lsof -a -p 7605 -iTCP -sTCP:LISTEN -P -F n
-                    , "-a"
-                    , "-iTCP", "-sTCP:LISTEN", "-P", "-F", "n"
-                    , "-p", valueOf(vmId)));
-            Process ps = pbuilder.start();
-            is = ps.getInputStream();
-            bis = new BufferedInputStream(is);
-            isr = new InputStreamReader(bis);
-            br = new BufferedReader(isr);
-
-            br.readLine(); // skip process id field
-            boolean first = false;
-            StringBuilder ports = new StringBuilder();
-            for (String line = br.readLine(); line != null; line = br.readLine()) {
-                ports.append(line.substring(1));
-                if (!first) {
-                    ports.append(",");
-                } else {
-                    first = false;
-                }
-            }
+        return measure(Collections.singletonList(vmId)).get(vmId);
+    }
+
+    @Override
+    public void open(SweepContext context) {}
+
+    /**
+     * A single <code>lsof</code> is run for all VMs of the sweep.
+     */
+    @Override
+    public Map<Integer, Collection<? extends Measure<?>>> measureData(SweepContext context) {
+        return measure(context.getVmIds());
+    }
 
-            if (ports.length() == 0) {
-                return EMPTY_MEASURES;
+    @Override
+    public ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> measureDataAsync(SweepContext context) {
+        final List<Integer> vmIds = context.getVmIds();
+        ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> measures = Futures.transform(
+                Processes.readLinesAsync(command(vmIds), context.getDeadline()),
+                new Function<List<String>, Map<Integer, Collection<? extends Measure<?>>>>() {
+                    @Override
+                    public Map<Integer, Collection<? extends Measure<?>>> apply(List<String> lines) {
+                        return parse(lines, vmIds);
+                    }
+                });
+        return Futures.withFallback(measures, new FutureFallback<Map<Integer, Collection<? extends Measure<?>>>>() {
+            @Override
+            public ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> create(Throwable t) {
+                log.error("Error executing process", t);
+                return Futures.immediateFuture(parse(Collections.<String> emptyList(), vmIds));
             }
-            return Collections.singleton(SUPPORTED_METRICS.iterator().next().newMeasure(ports.toString()));
+        });
+    }
+
+    @Override
+    public void close(SweepContext context) {}
+
+    private static Map<Integer, Collection<? extends Measure<?>>> measure(List<Integer> vmIds) {
+        try {
+            return parse(Processes.readLines(command(vmIds)), vmIds);
         } catch (Exception e) {
             log.error("Error executing process", e);
-            return EMPTY_MEASURES;
-        } finally {
-            closeQuietly(br);
-            closeQuietly(isr);
-            closeQuietly(bis);
-            closeQuietly(is);
+            return parse(Collections.<String> emptyList(), vmIds);
+        }
+    }
+
+    private static List<String> command(List<Integer> vmIds) {
+        return ImmutableList.<String> of("lsof" // lsof -a -p 7605,7606 -iTCP -sTCP:LISTEN -P -F n
+                , "-a"
+                , "-iTCP", "-sTCP:LISTEN", "-P", "-F", "n"
+                , "-p", Joiner.on(',').join(vmIds));
+    }
+
+    private static Map<Integer, Collection<? extends Measure<?>>> parse(List<String> lines, List<Integer> vmIds) {
+        Map<Integer, Collection<? extends Measure<?>>> retval = new HashMap<Integer, Collection<? extends Measure<?>>>();
+
+        // output is a "p<pid>" line followed by a "n<address>" line per port
+        Map<Integer, List<String>> ports = new HashMap<Integer, List<String>>();
+        List<String> current = null;
+        for (String line : lines) {
+            if (line.startsWith("p")) {
+                current = new ArrayList<String>();
+                ports.put(Integer.valueOf(line.substring(1)), current);
+            } else if (line.startsWith("n") && current != null) {
+                current.add(line.substring(1));
+            }
+        }
+        for (Map.Entry<Integer, List<String>> entry : ports.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                retval.put(entry.getKey(), Collections.singleton(SUPPORTED_METRICS.iterator().next().newMeasure(
+                        Joiner.on(',').join(entry.getValue()))));
+            }
+        }
+
+        for (Integer vmId : vmIds) {
+            if (!retval.containsKey(vmId)) {
+                retval.put(vmId, EMPTY_MEASURES);
+            }
         }
+        return retval;
     }
 }
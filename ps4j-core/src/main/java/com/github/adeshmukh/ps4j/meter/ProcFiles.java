@@ -0,0 +1,182 @@
+package com.github.adeshmukh.ps4j.meter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reads the files of <code>/proc</code> into a buffer and parses them without creating Strings. Each Meter keeps its
+ * instances in a {@link Pool}, so that a buffer is reused across VMs and sweeps whatever thread measures the VM.
+ *
+ * @author adeshmukh
+ */
+final class ProcFiles {
+
+    /**
+     * USER_HZ, the unit of the times in <code>/proc/&lt;pid&gt;/stat</code>. It is 100 on all mainstream Linux
+     * architectures and cannot be queried without native code.
+     */
+    static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    /**
+     * Whether <code>/proc</code> has the Linux layout. The meters reading it support no metrics on other systems.
+     */
+    static final boolean IS_LINUX = System.getProperty("os.name", "").startsWith("Linux");
+
+    // 1-based field numbers in /proc/<pid>/stat, see proc(5)
+    static final int STAT_MINFLT = 10;
+    static final int STAT_MAJFLT = 12;
+    static final int STAT_UTIME = 14;
+    static final int STAT_STIME = 15;
+    static final int STAT_STARTTIME = 22;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Idle instances, one for each measurement of the Meter that ran at the same time.
+     */
+    static final class Pool {
+        private final Queue<ProcFiles> idle = new ConcurrentLinkedQueue<ProcFiles>();
+
+        /**
+         * @return an idle instance, to be given back with {@link #release(ProcFiles)}
+         */
+        ProcFiles acquire() {
+            ProcFiles retval = idle.poll();
+            return retval == null ? new ProcFiles() : retval;
+        }
+
+        void release(ProcFiles files) {
+            idle.add(files);
+        }
+    }
+
+    private ProcFiles() {}
+
+    /**
+     * The buffer filled by the last {@link #read(File)}.
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Read the numeric fields of <code>/proc/&lt;pid&gt;/stat</code> up to the specified field.
+     *
+     * @param dir
+     *            <code>/proc/&lt;pid&gt;</code>
+     * @param lastField
+     *            1-based number of the last field to read
+     * @return the fields indexed by their number; fields 1 and 2 are not read
+     * @throws IOException
+     */
+    long[] readStat(File dir, int lastField) throws IOException {
+        int len = read(new File(dir, "stat"));
+        byte[] buf = buffer;
+
+        // the command name in field 2 may contain spaces, so fields are counted from the closing parenthesis
+        int pos = len;
+        while (pos > 0 && buf[pos - 1] != ')') {
+            pos--;
+        }
+        if (pos == 0) {
+            throw new IOException("Unexpected format");
+        }
+        long[] fields = new long[lastField + 1];
+        for (int field = 3; field <= lastField; field++) {
+            pos = skipSpaces(buf, pos, len);
+            if (pos == len) {
+                throw new IOException("Unexpected format");
+            }
+            fields[field] = parseLong(buf, pos, len);
+            while (pos < len && buf[pos] != ' ') {
+                pos++;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Read the file into the buffer, returning the number of bytes read. The buffer is grown and the file read again
+     * when it does not fit.
+     */
+    int read(File file) throws IOException {
+        while (true) {
+            byte[] buf = buffer;
+            InputStream in = new FileInputStream(file);
+            try {
+                int len = 0;
+                int n;
+                while (len < buf.length && (n = in.read(buf, len, buf.length - len)) > 0) {
+                    len += n;
+                }
+                if (len < buf.length) {
+                    return len;
+                }
+            } finally {
+                in.close();
+            }
+            buffer = new byte[buf.length * 2];
+        }
+    }
+
+    /**
+     * Value of the <code>key: value</code> line starting with the specified key, or -1 if there is no such line.
+     */
+    static long valueOf(byte[] key, byte[] buf, int len) {
+        for (int pos = 0; pos < len;) {
+            if (startsWith(buf, pos, len, key)) {
+                return parseLong(buf, skipSpaces(buf, pos + key.length, len), len);
+            }
+            while (pos < len && buf[pos] != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] buf, int pos, int len, byte[] prefix) {
+        if (len - pos < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(byte[] buf, int pos, int len) {
+        while (pos < len && (buf[pos] == ' ' || buf[pos] == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static long parseLong(byte[] buf, int pos, int len) {
+        boolean negative = pos < len && buf[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        long value = 0;
+        for (; pos < len && buf[pos] >= '0' && buf[pos] <= '9'; pos++) {
+            value = value * 10 + (buf[pos] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    static byte[] ascii(String s) {
+        byte[] retval = new byte[s.length()];
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = (byte) s.charAt(i);
+        }
+        return retval;
+    }
+}
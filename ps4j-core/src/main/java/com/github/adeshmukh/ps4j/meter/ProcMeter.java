@@ -0,0 +1,228 @@
+package com.github.adeshmukh.ps4j.meter;
+
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.CLOCK_TICKS_PER_SECOND;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_MAJFLT;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_MINFLT;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_STARTTIME;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_STIME;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_UTIME;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sun.jvmstat.monitor.MonitoredVm;
+
+import com.github.adeshmukh.ps4j.CostedMeter;
+import com.github.adeshmukh.ps4j.LongMetric;
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Meter;
+import com.github.adeshmukh.ps4j.MeterCost;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.SelectiveMeter;
+import com.github.adeshmukh.ps4j.metric.AutoScalingLongMetric;
+import com.github.adeshmukh.ps4j.metric.DateTimeMetric;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A {@link Meter} implementation for Linux that reads the process statistics from <code>/proc/&lt;pid&gt;</code>
+ * instead of forking <code>ps</code> for every VM.
+ * <p>
+ * Only the files backing the requested metrics are read, into buffers of the Meter that are reused across VMs and
+ * sweeps. Values that cannot be read, e.g. <code>/proc/&lt;pid&gt;/io</code> of a process owned by another user, are
+ * left out of the measurement.
+ * <p>
+ * The Meter supports no metrics on other systems than Linux, where {@link PsMeter} measures the processes instead.
+ *
+ * @author adeshmukh
+ */
+@SuppressWarnings("restriction")
+public class ProcMeter implements SelectiveMeter, CostedMeter {
+    private static final Logger log = LoggerFactory.getLogger(ProcMeter.class);
+
+    private static final File PROC = new File("/proc");
+
+    private static final LongMetric CPU_TICKS =
+            new AutoScalingLongMetric("cpuTicks", "user and system cpu time in clock ticks (1/100s)");
+    private static final LongMetric RSS = new AutoScalingLongMetric("rss", "resident set size in bytes");
+    private static final LongMetric MIN_FLT =
+            new AutoScalingLongMetric("minFlt", "minor page faults, not requiring a page to be loaded from disk");
+    private static final LongMetric MAJ_FLT =
+            new AutoScalingLongMetric("majFlt", "major page faults, requiring a page to be loaded from disk");
+    private static final LongMetric VOL_CTX_SW =
+            new AutoScalingLongMetric("volCtxSw", "voluntary context switches");
+    private static final LongMetric INV_CTX_SW =
+            new AutoScalingLongMetric("invCtxSw", "involuntary context switches");
+    private static final LongMetric READ_BYTES =
+            new AutoScalingLongMetric("readBytes", "bytes read from the storage layer");
+    private static final LongMetric WRITE_BYTES =
+            new AutoScalingLongMetric("writeBytes", "bytes written to the storage layer");
+    private static final Metric<Date> START_TIME = new DateTimeMetric("startTime", "time the VM process started");
+
+    private static final List<Metric<?>> SUPPORTED_METRICS = ImmutableList.<Metric<?>> of(CPU_TICKS, RSS, MIN_FLT,
+            MAJ_FLT, VOL_CTX_SW, INV_CTX_SW, READ_BYTES, WRITE_BYTES, START_TIME);
+
+    private static final byte[] VM_RSS = ProcFiles.ascii("VmRSS:");
+    private static final byte[] VOLUNTARY_CTXT_SWITCHES = ProcFiles.ascii("voluntary_ctxt_switches:");
+    private static final byte[] NONVOLUNTARY_CTXT_SWITCHES = ProcFiles.ascii("nonvoluntary_ctxt_switches:");
+    private static final byte[] READ_BYTES_KEY = ProcFiles.ascii("read_bytes:");
+    private static final byte[] WRITE_BYTES_KEY = ProcFiles.ascii("write_bytes:");
+
+    private static volatile long bootTimeMillis = -1;
+
+    private final ProcFiles.Pool files = new ProcFiles.Pool();
+
+    @Override
+    public Collection<? extends Metric<?>> supportedMetrics() {
+        return ProcFiles.IS_LINUX ? SUPPORTED_METRICS : Collections.<Metric<?>> emptyList();
+    }
+
+    @Override
+    public MeterCost getCost() {
+        return MeterCost.FILE;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return 0;
+    }
+
+    @Override
+    public Collection<? extends Measure<?>> measureData(MonitoredVm vm) {
+        return measureData(vm, Collections.<String> emptySet());
+    }
+
+    @Override
+    public Collection<? extends Measure<?>> measureData(MonitoredVm vm, Set<String> metricNames) {
+        File dir = new File(PROC, String.valueOf(vm.getVmIdentifier().getLocalVmId()));
+        List<Measure<?>> retval = new ArrayList<Measure<?>>(SUPPORTED_METRICS.size());
+        ProcFiles pf = files.acquire();
+        try {
+            try {
+                if (isRequested(metricNames, CPU_TICKS, MIN_FLT, MAJ_FLT, START_TIME)) {
+                    measureStat(pf, dir, metricNames, retval);
+                }
+            } catch (IOException e) {
+                log.debug("Error reading stat of [{}]: {}", dir, e);
+            }
+            try {
+                if (isRequested(metricNames, RSS, VOL_CTX_SW, INV_CTX_SW)) {
+                    measureStatus(pf, dir, metricNames, retval);
+                }
+            } catch (IOException e) {
+                log.debug("Error reading status of [{}]: {}", dir, e);
+            }
+            try {
+                if (isRequested(metricNames, READ_BYTES, WRITE_BYTES)) {
+                    measureIo(pf, dir, metricNames, retval);
+                }
+            } catch (IOException e) {
+                log.debug("Error reading io of [{}]: {}", dir, e);
+            }
+        } finally {
+            files.release(pf);
+        }
+        return retval;
+    }
+
+    private static void measureStat(ProcFiles pf, File dir, Set<String> metricNames, List<Measure<?>> retval)
+            throws IOException {
+        long[] fields = pf.readStat(dir, STAT_STARTTIME);
+
+        if (isRequested(metricNames, CPU_TICKS)) {
+            retval.add(CPU_TICKS.newMeasure(fields[STAT_UTIME] + fields[STAT_STIME]));
+        }
+        if (isRequested(metricNames, MIN_FLT)) {
+            retval.add(MIN_FLT.newMeasure(fields[STAT_MINFLT]));
+        }
+        if (isRequested(metricNames, MAJ_FLT)) {
+            retval.add(MAJ_FLT.newMeasure(fields[STAT_MAJFLT]));
+        }
+        if (isRequested(metricNames, START_TIME) && bootTimeMillis() >= 0) {
+            long startMillis = bootTimeMillis() + fields[STAT_STARTTIME] * 1000 / CLOCK_TICKS_PER_SECOND;
+            retval.add(START_TIME.newMeasure(new Date(startMillis)));
+        }
+    }
+
+    private static void measureStatus(ProcFiles pf, File dir, Set<String> metricNames, List<Measure<?>> retval)
+            throws IOException {
+        int len = pf.read(new File(dir, "status"));
+        byte[] buf = pf.buffer();
+
+        if (isRequested(metricNames, RSS)) {
+            long kb = ProcFiles.valueOf(VM_RSS, buf, len);
+            if (kb >= 0) {
+                retval.add(RSS.newMeasure(kb * 1024));
+            }
+        }
+        addValue(VOL_CTX_SW, VOLUNTARY_CTXT_SWITCHES, buf, len, metricNames, retval);
+        addValue(INV_CTX_SW, NONVOLUNTARY_CTXT_SWITCHES, buf, len, metricNames, retval);
+    }
+
+    private static void measureIo(ProcFiles pf, File dir, Set<String> metricNames, List<Measure<?>> retval)
+            throws IOException {
+        int len = pf.read(new File(dir, "io"));
+        byte[] buf = pf.buffer();
+
+        addValue(READ_BYTES, READ_BYTES_KEY, buf, len, metricNames, retval);
+        addValue(WRITE_BYTES, WRITE_BYTES_KEY, buf, len, metricNames, retval);
+    }
+
+    private static void addValue(LongMetric metric, byte[] key, byte[] buf, int len, Set<String> metricNames,
+            List<Measure<?>> retval) {
+        if (isRequested(metricNames, metric)) {
+            long value = ProcFiles.valueOf(key, buf, len);
+            if (value >= 0) {
+                retval.add(metric.newMeasure(value));
+            }
+        }
+    }
+
+    private static boolean isRequested(Set<String> metricNames, Metric<?>... metrics) {
+        if (metricNames.isEmpty()) {
+            return true;
+        }
+        for (Metric<?> metric : metrics) {
+            if (metricNames.contains(metric.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Boot time from the <code>btime</code> line of <code>/proc/stat</code>, read once.
+     */
+    private static long bootTimeMillis() {
+        if (bootTimeMillis < 0) {
+            try {
+                BufferedReader reader = new BufferedReader(new FileReader(new File(PROC, "stat")));
+                try {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (line.startsWith("btime ")) {
+                            bootTimeMillis = Long.parseLong(line.substring(6).trim()) * 1000;
+                            break;
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                log.debug("Error reading boot time: {}", e);
+            } catch (NumberFormatException e) {
+                log.debug("Error reading boot time: {}", e);
+            }
+        }
+        return bootTimeMillis;
+    }
+}
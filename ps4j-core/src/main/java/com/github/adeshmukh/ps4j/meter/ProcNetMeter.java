@@ -0,0 +1,293 @@
+package com.github.adeshmukh.ps4j.meter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sun.jvmstat.monitor.MonitoredVm;
+
+import com.github.adeshmukh.ps4j.BatchMeter;
+import com.github.adeshmukh.ps4j.CostedMeter;
+import com.github.adeshmukh.ps4j.LongMetric;
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Meter;
+import com.github.adeshmukh.ps4j.MeterCost;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.SweepContext;
+import com.github.adeshmukh.ps4j.metric.AutoScalingLongMetric;
+import com.github.adeshmukh.ps4j.metric.SimpleMetric;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A {@link Meter} implementation for Linux that reports the TCP sockets of each VM from <code>/proc/net/tcp</code> and
+ * <code>/proc/net/tcp6</code>, as an alternative to {@link OpenPortsMeter} that does not fork <code>lsof</code>.
+ * <p>
+ * The socket tables are parsed once per sweep, and the sockets are matched to the VMs by the inodes of the
+ * <code>socket:[inode]</code> links in <code>/proc/&lt;pid&gt;/fd</code>. Connections in TIME_WAIT no longer belong
+ * to a process, so they are attributed to the VM listening on their local port, which leaves out the TIME_WAIT
+ * connections that the VM initiated itself. Only the sockets of the network namespace of the ps4j process are seen.
+ * <p>
+ * Reading the fd links requires a Java 7+ runtime; on older runtimes no sockets are found. On other systems than Linux
+ * the Meter supports no metrics.
+ *
+ * @author adeshmukh
+ */
+@SuppressWarnings("restriction")
+public class ProcNetMeter implements BatchMeter, CostedMeter {
+    private static final Logger log = LoggerFactory.getLogger(ProcNetMeter.class);
+
+    private static final String EMPTY_VALUE = "-";
+
+    private static final File PROC = new File("/proc");
+    private static final File[] TCP_TABLES = { new File("/proc/net/tcp"), new File("/proc/net/tcp6") };
+
+    // connection states, see include/net/tcp_states.h
+    private static final int TCP_ESTABLISHED = 0x01;
+    private static final int TCP_TIME_WAIT = 0x06;
+    private static final int TCP_CLOSE_WAIT = 0x08;
+    private static final int TCP_LISTEN = 0x0A;
+
+    private static final String SOCKET_LINK_PREFIX = "socket:[";
+
+    private static final Metric<String> LISTEN_PORTS = new SimpleMetric<String>("listenPorts", "ports of type TCP:LISTEN");
+    private static final LongMetric TCP_ESTAB =
+            new AutoScalingLongMetric("tcpEstab", "TCP connections in state ESTABLISHED");
+    private static final LongMetric TCP_TIME_WAIT_COUNT =
+            new AutoScalingLongMetric("tcpTimeWait", "TCP connections in state TIME_WAIT on a listening port");
+    private static final LongMetric TCP_CLOSE_WAIT_COUNT =
+            new AutoScalingLongMetric("tcpCloseWait", "TCP connections in state CLOSE_WAIT");
+
+    private static final List<Metric<?>> SUPPORTED_METRICS = ImmutableList.<Metric<?>> of(LISTEN_PORTS, TCP_ESTAB,
+            TCP_TIME_WAIT_COUNT, TCP_CLOSE_WAIT_COUNT);
+
+    private static final Method PATHS_GET;
+    private static final Method READ_SYMBOLIC_LINK;
+    static {
+        Method pathsGet = null;
+        Method readSymbolicLink = null;
+        try {
+            pathsGet = Class.forName("java.nio.file.Paths").getMethod("get", String.class, String[].class);
+            readSymbolicLink = Class.forName("java.nio.file.Files").getMethod("readSymbolicLink",
+                    Class.forName("java.nio.file.Path"));
+        } catch (Exception e) {
+            log.warn("Symbolic links cannot be read on this runtime, no sockets will be reported");
+        }
+        PATHS_GET = pathsGet;
+        READ_SYMBOLIC_LINK = readSymbolicLink;
+    }
+
+    /**
+     * An entry of a socket table.
+     */
+    private static class Socket {
+        final String localAddress;
+        final int localPort;
+        final int state;
+
+        Socket(String localAddress, int localPort, int state) {
+            this.localAddress = localAddress;
+            this.localPort = localPort;
+            this.state = state;
+        }
+    }
+
+    @Override
+    public Collection<? extends Metric<?>> supportedMetrics() {
+        return ProcFiles.IS_LINUX ? SUPPORTED_METRICS : Collections.<Metric<?>> emptyList();
+    }
+
+    @Override
+    public MeterCost getCost() {
+        return MeterCost.FILE;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return 0;
+    }
+
+    @Override
+    public Collection<? extends Measure<?>> measureData(MonitoredVm vm) {
+        int vmId = vm.getVmIdentifier().getLocalVmId();
+        return measure(Collections.singletonList(vmId)).get(vmId);
+    }
+
+    @Override
+    public void open(SweepContext context) {}
+
+    @Override
+    public Map<Integer, Collection<? extends Measure<?>>> measureData(SweepContext context) {
+        return measure(context.getVmIds());
+    }
+
+    @Override
+    public void close(SweepContext context) {}
+
+    private static Map<Integer, Collection<? extends Measure<?>>> measure(List<Integer> vmIds) {
+        Map<Long, Socket> sockets = new HashMap<Long, Socket>();
+        List<Socket> timeWaits = new ArrayList<Socket>();
+        for (File table : TCP_TABLES) {
+            try {
+                readTable(table, sockets, timeWaits);
+            } catch (IOException e) {
+                log.debug("Error reading [{}]: {}", table, e);
+            }
+        }
+
+        Map<Integer, Collection<? extends Measure<?>>> retval = new HashMap<Integer, Collection<? extends Measure<?>>>();
+        for (Integer vmId : vmIds) {
+            SortedMap<Integer, String> listenPorts = new TreeMap<Integer, String>();
+            long estab = 0;
+            long closeWait = 0;
+            for (Long inode : socketInodes(vmId)) {
+                Socket socket = sockets.get(inode);
+                if (socket == null) {
+                    continue;
+                }
+                switch (socket.state) {
+                case TCP_LISTEN:
+                    listenPorts.put(socket.localPort, socket.localAddress + ":" + socket.localPort);
+                    break;
+                case TCP_ESTABLISHED:
+                    estab++;
+                    break;
+                case TCP_CLOSE_WAIT:
+                    closeWait++;
+                    break;
+                default:
+                }
+            }
+            long timeWait = 0;
+            for (Socket socket : timeWaits) {
+                if (listenPorts.containsKey(socket.localPort)) {
+                    timeWait++;
+                }
+            }
+
+            retval.put(vmId, ImmutableList.<Measure<?>> of(
+                    LISTEN_PORTS.newMeasure(listenPorts.isEmpty() ? EMPTY_VALUE : Joiner.on(',').join(listenPorts.values()))
+                    , TCP_ESTAB.newMeasure(estab)
+                    , TCP_TIME_WAIT_COUNT.newMeasure(timeWait)
+                    , TCP_CLOSE_WAIT_COUNT.newMeasure(closeWait)));
+        }
+        return retval;
+    }
+
+    /**
+     * Parse a socket table, indexing the sockets by inode. Sockets in TIME_WAIT have no inode and are collected
+     * separately. Lines that cannot be parsed are skipped, so that they do not cost the other sockets.
+     */
+    private static void readTable(File table, Map<Long, Socket> sockets, List<Socket> timeWaits) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(table));
+        try {
+            // skip header
+            reader.readLine();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode ...
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length < 10) {
+                    continue;
+                }
+                try {
+                    int state = Integer.parseInt(parts[3], 16);
+                    if (state != TCP_LISTEN && state != TCP_ESTABLISHED && state != TCP_CLOSE_WAIT
+                            && state != TCP_TIME_WAIT) {
+                        continue;
+                    }
+                    int colon = parts[1].indexOf(':');
+                    Socket socket = new Socket(address(parts[1].substring(0, colon)),
+                            Integer.parseInt(parts[1].substring(colon + 1), 16), state);
+                    if (state == TCP_TIME_WAIT) {
+                        timeWaits.add(socket);
+                    } else {
+                        sockets.put(Long.valueOf(parts[9]), socket);
+                    }
+                } catch (NumberFormatException e) {
+                    log.debug("Skipping unexpected line of [{}]: {}", table, line);
+                } catch (IndexOutOfBoundsException e) {
+                    log.debug("Skipping unexpected line of [{}]: {}", table, line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Format an address of a socket table, where each 32-bit word is in host (little endian) byte order. The wildcard
+     * address is shown as <code>*</code>, as <code>lsof</code> does.
+     */
+    private static String address(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        boolean wildcard = true;
+        for (int word = 0; word < bytes.length; word += 4) {
+            for (int i = 0; i < 4; i++) {
+                int pos = (word + 3 - i) * 2;
+                bytes[word + i] = (byte) Integer.parseInt(hex.substring(pos, pos + 2), 16);
+                wildcard &= bytes[word + i] == 0;
+            }
+        }
+        if (wildcard) {
+            return "*";
+        }
+        try {
+            String address = InetAddress.getByAddress(bytes).getHostAddress();
+            return bytes.length > 4 ? "[" + address + "]" : address;
+        } catch (IOException e) {
+            return hex;
+        }
+    }
+
+    /**
+     * Inodes of the sockets open in the process.
+     */
+    private static List<Long> socketInodes(int vmId) {
+        String[] fds = new File(new File(PROC, String.valueOf(vmId)), "fd").list();
+        if (fds == null || READ_SYMBOLIC_LINK == null) {
+            return Collections.emptyList();
+        }
+        String fdDir = PROC.getPath() + "/" + vmId + "/fd/";
+        List<Long> retval = new ArrayList<Long>();
+        for (String fd : fds) {
+            String target = readSymbolicLink(fdDir + fd);
+            if (target != null && target.startsWith(SOCKET_LINK_PREFIX)) {
+                try {
+                    retval.add(Long.valueOf(target.substring(SOCKET_LINK_PREFIX.length(), target.length() - 1)));
+                } catch (NumberFormatException e) {
+                    // not an inode
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * @return the target of the link, or null if it could not be read, e.g. because the fd was closed meanwhile
+     */
+    private static String readSymbolicLink(String path) {
+        try {
+            Object link = PATHS_GET.invoke(null, path, new String[0]);
+            return READ_SYMBOLIC_LINK.invoke(null, link).toString();
+        } catch (InvocationTargetException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+}
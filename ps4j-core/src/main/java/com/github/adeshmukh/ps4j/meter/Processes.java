@@ -0,0 +1,227 @@
+package com.github.adeshmukh.ps4j.meter;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+import com.github.adeshmukh.ps4j.Deadline;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the child processes of the process based Meters within a {@link Deadline}. A process that is still running
+ * when the deadline expires is destroyed.
+ * <p>
+ * All child processes are tended by a single reaper thread, which polls their output without blocking and completes
+ * the future of each process when it exits. Waiting for a process therefore does not hold a thread of its own.
+ *
+ * @author adeshmukh
+ */
+final class Processes {
+
+    private static final long POLL_MILLIS = 2;
+
+    private static final Queue<Child> STARTED = new ConcurrentLinkedQueue<Child>();
+
+    private static Thread reaper;
+
+    /**
+     * A running process and the output read from it so far.
+     */
+    private static final class Child {
+        final List<String> command;
+        final Process process;
+        final Deadline deadline;
+        final SettableFuture<List<String>> result = SettableFuture.create();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Child(List<String> command, Process process, Deadline deadline) {
+            this.command = command;
+            this.process = process;
+            this.deadline = deadline;
+        }
+
+        boolean hasExited() {
+            try {
+                process.exitValue();
+                return true;
+            } catch (IllegalThreadStateException e) {
+                return false;
+            }
+        }
+
+        List<String> lines() throws IOException {
+            BufferedReader br = new BufferedReader(new StringReader(out.toString()));
+            List<String> lines = new ArrayList<String>();
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                lines.add(line);
+            }
+            return lines;
+        }
+    }
+
+    private Processes() {}
+
+    /**
+     * Run the command within the {@link Deadline#current() current deadline} and return the lines written to its
+     * standard output.
+     *
+     * @param command
+     * @return
+     * @throws IOException
+     *             if the process could not be run, or did not complete before the deadline
+     */
+    static List<String> readLines(List<String> command) throws IOException {
+        ListenableFuture<List<String>> result = readLinesAsync(command, Deadline.current());
+        try {
+            return result.get();
+        } catch (InterruptedException ie) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running " + command);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    /**
+     * Start the command and return the lines written to its standard output once it exits. Cancelling the future
+     * destroys the process.
+     *
+     * @param command
+     * @param deadline
+     * @return the lines, or an {@link IOException} if the process could not be run or did not complete before the
+     *         deadline
+     */
+    static ListenableFuture<List<String>> readLinesAsync(List<String> command, Deadline deadline) {
+        if (deadline.isExpired()) {
+            return Futures.immediateFailedFuture(new InterruptedIOException("Deadline expired before running " + command));
+        }
+        Process process;
+        try {
+            process = new ProcessBuilder(command).start();
+        } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        Child child = new Child(command, process, deadline);
+        STARTED.add(child);
+        wakeReaper();
+        return child.result;
+    }
+
+    private static synchronized void wakeReaper() {
+        if (reaper == null) {
+            reaper = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ps4j-process-reaper").build()
+                    .newThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            reap();
+                        }
+                    });
+            reaper.start();
+        }
+        Processes.class.notifyAll();
+    }
+
+    private static void reap() {
+        List<Child> children = new ArrayList<Child>();
+        byte[] buf = new byte[8192];
+        while (true) {
+            for (Child child = STARTED.poll(); child != null; child = STARTED.poll()) {
+                children.add(child);
+            }
+            if (children.isEmpty()) {
+                synchronized (Processes.class) {
+                    while (STARTED.isEmpty()) {
+                        try {
+                            Processes.class.wait();
+                        } catch (InterruptedException e) {
+                            // the reaper runs for the lifetime of the VM
+                        }
+                    }
+                }
+                continue;
+            }
+
+            boolean progress = false;
+            for (Iterator<Child> it = children.iterator(); it.hasNext();) {
+                Child child = it.next();
+                try {
+                    progress |= drain(child.process.getInputStream(), child.out, buf);
+                    drain(child.process.getErrorStream(), null, buf);
+                    if (child.result.isCancelled()) {
+                        child.process.destroy();
+                        close(child);
+                        it.remove();
+                    } else if (child.hasExited()) {
+                        drain(child.process.getInputStream(), child.out, buf);
+                        close(child);
+                        child.result.set(child.lines());
+                        it.remove();
+                    } else if (child.deadline.isExpired()) {
+                        child.process.destroy();
+                        close(child);
+                        child.result.setException(new InterruptedIOException("Deadline expired while running " + child.command));
+                        it.remove();
+                    }
+                } catch (Exception e) {
+                    child.process.destroy();
+                    close(child);
+                    child.result.setException(e);
+                    it.remove();
+                }
+            }
+            if (!progress) {
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    // keep reaping
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the bytes available from the stream without blocking.
+     *
+     * @param out
+     *            destination of the bytes, null to discard them
+     * @return whether any bytes were read
+     */
+    private static boolean drain(InputStream in, ByteArrayOutputStream out, byte[] buf) throws IOException {
+        boolean retval = false;
+        for (int n = in.available(); n > 0; n = in.available()) {
+            n = in.read(buf, 0, Math.min(n, buf.length));
+            if (n <= 0) {
+                break;
+            }
+            if (out != null) {
+                out.write(buf, 0, n);
+            }
+            retval = true;
+        }
+        return retval;
+    }
+
+    private static void close(Child child) {
+        closeQuietly(child.process.getOutputStream());
+        closeQuietly(child.process.getInputStream());
+        closeQuietly(child.process.getErrorStream());
+    }
+}
@@ -1,38 +1,45 @@
 package com.github.adeshmukh.ps4j.meter;
 
-import static com.google.common.io.Closeables.closeQuietly;
-import static java.lang.String.valueOf;
-
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import sun.jvmstat.monitor.MonitoredVm;
 
+import com.github.adeshmukh.ps4j.AsyncBatchMeter;
+import com.github.adeshmukh.ps4j.CostedMeter;
 import com.github.adeshmukh.ps4j.Measure;
 import com.github.adeshmukh.ps4j.Meter;
+import com.github.adeshmukh.ps4j.MeterCost;
 import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.SelectiveMeter;
+import com.github.adeshmukh.ps4j.SweepContext;
 import com.github.adeshmukh.ps4j.metric.SimpleMetric;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * A {@link Meter} implementation that relies on execution of the <code>ps</code> utility that is generall available on
  * *nix based systems.
+ * <p>
+ * Within a sweep, a single <code>ps</code> process measures all VMs, without holding a thread while it runs.
  *
  * @author adeshmukh
  */
 @SuppressWarnings("restriction")
-public class PsMeter implements Meter {
+public class PsMeter implements SelectiveMeter, AsyncBatchMeter, CostedMeter {
     private static final Logger log = LoggerFactory.getLogger(PsMeter.class);
     private static final String EMPTY_VALUE = "-";
 
@@ -46,62 +53,153 @@ public class PsMeter implements Meter {
             , new SimpleMetric<String>("msgsnd", "total messages sent (writes on pipes/sockets)")
             );
 
-    private static List<String> PS_FORMAT_OPTIONS =
-            Lists.transform(SUPPORTED_METRICS, new Function<Metric<String>, String>() {
-                @Override
-                public String apply(Metric<String> metric) {
-                    return metric.getName();
-                }
-            });
-    private static final String PS_FORMAT_OPTION = Joiner.on(',').join(PS_FORMAT_OPTIONS);
-    private static final List<Measure<String>> EMPTY_MEASURES =
-            Lists.transform(SUPPORTED_METRICS, new Function<Metric<String>, Measure<String>>() {
+    private static final Function<Metric<String>, String> GET_NAME = new Function<Metric<String>, String>() {
+        @Override
+        public String apply(Metric<String> metric) {
+            return metric.getName();
+        }
+    };
+    private static final Function<Metric<String>, Measure<String>> TO_EMPTY_MEASURE =
+            new Function<Metric<String>, Measure<String>>() {
                 @Override
                 public Measure<String> apply(Metric<String> metric) {
                     return metric.newMeasure(EMPTY_VALUE);
                 }
-            });
+            };
+
+    private static List<String> PS_FORMAT_OPTIONS = Lists.transform(SUPPORTED_METRICS, GET_NAME);
+    private static final String PS_FORMAT_OPTION = Joiner.on(',').join(PS_FORMAT_OPTIONS);
+    private static final String PID_OPTION = "pid,";
+    private static final List<Measure<String>> EMPTY_MEASURES = Lists.transform(SUPPORTED_METRICS, TO_EMPTY_MEASURE);
 
     @Override
     public Collection<? extends Metric<?>> supportedMetrics() {
         return SUPPORTED_METRICS;
     }
 
+    @Override
+    public MeterCost getCost() {
+        return MeterCost.PROCESS;
+    }
+
+    /**
+     * A single <code>ps</code> at a time is enough, as it covers all the VMs of a sweep.
+     */
+    @Override
+    public int getMaxConcurrency() {
+        return 1;
+    }
+
     @Override
     public Collection<? extends Measure<?>> measureData(MonitoredVm vm) {
+        return measureData(vm, Collections.<String> emptySet());
+    }
+
+    /**
+     * Only the requested metrics are passed as format options to <code>ps</code>.
+     */
+    @Override
+    public Collection<? extends Measure<?>> measureData(MonitoredVm vm, Set<String> metricNames) {
         int vmId = vm.getVmIdentifier().getLocalVmId();
-        InputStream is = null;
-        BufferedInputStream bis = null;
-        InputStreamReader isr = null;
-        BufferedReader br = null;
-        try {
-            ProcessBuilder pbuilder = new ProcessBuilder();
-            pbuilder.command(ImmutableList.<String> of("ps"
-                    , "-o", PS_FORMAT_OPTION
-                    , "-p", valueOf(vmId)));
-            Process ps = pbuilder.start();
-            is = ps.getInputStream();
-            bis = new BufferedInputStream(is);
-            isr = new InputStreamReader(bis);
-            br = new BufferedReader(isr);
-
-            br.readLine(); // skip header
-            String line = br.readLine();
-            String[] parts = line.split("\\s+");
-            List<Measure<?>> retval = new ArrayList<Measure<?>>(PS_FORMAT_OPTIONS.size());
-            for (int i = 0, iSize = Math.min(parts.length, SUPPORTED_METRICS.size()); i < iSize; i++) {
-                retval.add(SUPPORTED_METRICS.get(i).newMeasure(parts[i]));
+        return measure(Collections.singletonList(vmId), metricNames).get(vmId);
+    }
+
+    @Override
+    public void open(SweepContext context) {}
+
+    /**
+     * A single <code>ps</code> is run for all VMs of the sweep.
+     */
+    @Override
+    public Map<Integer, Collection<? extends Measure<?>>> measureData(SweepContext context) {
+        return measure(context.getVmIds(), context.getMetricNames());
+    }
+
+    @Override
+    public ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> measureDataAsync(SweepContext context) {
+        final List<Integer> vmIds = context.getVmIds();
+        final List<Metric<String>> metrics = requestedMetrics(context.getMetricNames());
+        ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> measures = Futures.transform(
+                Processes.readLinesAsync(command(vmIds, metrics), context.getDeadline()),
+                new Function<List<String>, Map<Integer, Collection<? extends Measure<?>>>>() {
+                    @Override
+                    public Map<Integer, Collection<? extends Measure<?>>> apply(List<String> lines) {
+                        return parse(lines, vmIds, metrics);
+                    }
+                });
+        return Futures.withFallback(measures, new FutureFallback<Map<Integer, Collection<? extends Measure<?>>>>() {
+            @Override
+            public ListenableFuture<Map<Integer, Collection<? extends Measure<?>>>> create(Throwable t) {
+                log.error("Error executing process", t);
+                return Futures.immediateFuture(parse(Collections.<String> emptyList(), vmIds, metrics));
             }
+        });
+    }
+
+    @Override
+    public void close(SweepContext context) {}
 
-            return retval;
+    private static Map<Integer, Collection<? extends Measure<?>>> measure(List<Integer> vmIds, Set<String> metricNames) {
+        List<Metric<String>> metrics = requestedMetrics(metricNames);
+        try {
+            return parse(Processes.readLines(command(vmIds, metrics)), vmIds, metrics);
         } catch (Exception e) {
             log.error("Error executing process", e);
-            return EMPTY_MEASURES;
-        } finally {
-            closeQuietly(br);
-            closeQuietly(isr);
-            closeQuietly(bis);
-            closeQuietly(is);
+            return parse(Collections.<String> emptyList(), vmIds, metrics);
+        }
+    }
+
+    private static List<String> command(List<Integer> vmIds, List<Metric<String>> metrics) {
+        return ImmutableList.<String> of("ps"
+                , "-o", PID_OPTION + (metrics.size() == SUPPORTED_METRICS.size() ? PS_FORMAT_OPTION : formatOption(metrics))
+                , "-p", Joiner.on(',').join(vmIds));
+    }
+
+    private static Map<Integer, Collection<? extends Measure<?>>> parse(List<String> lines, List<Integer> vmIds,
+            List<Metric<String>> metrics) {
+        Map<Integer, Collection<? extends Measure<?>>> retval = new HashMap<Integer, Collection<? extends Measure<?>>>();
+
+        // skip header
+        for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+            String[] parts = line.trim().split("\\s+");
+            List<Measure<?>> measures = new ArrayList<Measure<?>>(metrics.size());
+            for (int i = 1, iSize = Math.min(parts.length, metrics.size() + 1); i < iSize; i++) {
+                measures.add(metrics.get(i - 1).newMeasure(parts[i]));
+            }
+            retval.put(Integer.valueOf(parts[0]), measures);
+        }
+
+        // VMs that exited meanwhile, or all of them if ps failed
+        List<Measure<String>> emptyMeasures = null;
+        for (Integer vmId : vmIds) {
+            if (!retval.containsKey(vmId)) {
+                if (emptyMeasures == null) {
+                    emptyMeasures = metrics.size() == SUPPORTED_METRICS.size() ? EMPTY_MEASURES : emptyMeasures(metrics);
+                }
+                retval.put(vmId, emptyMeasures);
+            }
+        }
+        return retval;
+    }
+
+    private static List<Metric<String>> requestedMetrics(Set<String> metricNames) {
+        if (metricNames.isEmpty()) {
+            return SUPPORTED_METRICS;
         }
+        List<Metric<String>> retval = new ArrayList<Metric<String>>(SUPPORTED_METRICS.size());
+        for (Metric<String> metric : SUPPORTED_METRICS) {
+            if (metricNames.contains(metric.getName())) {
+                retval.add(metric);
+            }
+        }
+        return retval;
+    }
+
+    private static String formatOption(List<Metric<String>> metrics) {
+        return Joiner.on(',').join(Lists.transform(metrics, GET_NAME));
+    }
+
+    private static List<Measure<String>> emptyMeasures(List<Metric<String>> metrics) {
+        return ImmutableList.copyOf(Lists.transform(metrics, TO_EMPTY_MEASURE));
     }
-}
\ No newline at end of file
+}
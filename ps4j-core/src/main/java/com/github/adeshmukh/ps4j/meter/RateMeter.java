@@ -0,0 +1,292 @@
+package com.github.adeshmukh.ps4j.meter;
+
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.CLOCK_TICKS_PER_SECOND;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_MAJFLT;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_MINFLT;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_STIME;
+import static com.github.adeshmukh.ps4j.meter.ProcFiles.STAT_UTIME;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sun.jvmstat.monitor.LongMonitor;
+import sun.jvmstat.monitor.Monitor;
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredVm;
+
+import com.github.adeshmukh.ps4j.CostedMeter;
+import com.github.adeshmukh.ps4j.DoubleMetric;
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.MeterCost;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.SelectiveMeter;
+import com.github.adeshmukh.ps4j.metric.AutoScalingDoubleMetric;
+import com.github.adeshmukh.ps4j.metric.RateMetric;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Meter implementation for rates computed from two consecutive samples of the cumulative counters of a VM, e.g. the
+ * percentage of time spent in garbage collection during the last interval rather than since the VM started.
+ * <p>
+ * The previous sample is kept for as long as the VM stays attached, so rates cover the interval between sweeps when
+ * sampling continuously. The first sample of a VM has no predecessor, so its rates are missing, as is a rate whose
+ * counter is missing from either sample; a rate is never replaced by the average since the VM started. A single sweep
+ * therefore reports no rates. The cpu and page fault rates are read from <code>/proc</code> and are only available on Linux.
+ *
+ * @author adeshmukh
+ */
+@SuppressWarnings("restriction")
+public class RateMeter implements SelectiveMeter, CostedMeter {
+    private static final Logger log = LoggerFactory.getLogger(RateMeter.class);
+
+    private static final File PROC = new File("/proc");
+
+    private static final String HRT_FREQUENCY = "sun.os.hrt.frequency";
+    private static final String HRT_TICKS = "sun.os.hrt.ticks";
+    private static final String YNG_GC_TIME = "sun.gc.collector.0.time";
+    private static final String FULL_GC_TIME = "sun.gc.collector.1.time";
+    private static final String YNG_GCS = "sun.gc.collector.0.invocations";
+    private static final String FULL_GCS = "sun.gc.collector.1.invocations";
+    private static final String EDEN_USED = "sun.gc.generation.0.space.0.used";
+    private static final String EDEN_CAPACITY = "sun.gc.generation.0.space.0.capacity";
+
+    /**
+     * Values of the counters of a VM at a point in time. Counters that could not be read are -1.
+     */
+    private static final class Sample {
+        long ticks;
+        long gcTicks;
+        long yngGcs;
+        long fullGcs;
+        long edenUsed;
+        long edenCapacity;
+        long cpuTicks;
+        long pageFaults;
+    }
+
+    private static enum Rate {
+        gcTimePct(new RateMetric("gcTimePct", "percentage of time spent in garbage collection")) {
+            @Override
+            double value(Sample prev, Sample cur, double seconds) {
+                return available(prev.gcTicks, cur.gcTicks)
+                        ? 100d * (cur.gcTicks - prev.gcTicks) / (cur.ticks - prev.ticks) : Double.NaN;
+            }
+        },
+        yngGcPerSec(new RateMetric("yngGcPerSec", "young gen garbage collections per second")) {
+            @Override
+            double value(Sample prev, Sample cur, double seconds) {
+                return available(prev.yngGcs, cur.yngGcs) ? (cur.yngGcs - prev.yngGcs) / seconds : Double.NaN;
+            }
+        },
+        fullGcPerSec(new RateMetric("fullGcPerSec", "full garbage collections per second")) {
+            @Override
+            double value(Sample prev, Sample cur, double seconds) {
+                return available(prev.fullGcs, cur.fullGcs) ? (cur.fullGcs - prev.fullGcs) / seconds : Double.NaN;
+            }
+        },
+
+        /**
+         * Each young collection empties eden, so the allocated bytes are the change in eden usage plus a full eden per
+         * young collection.
+         */
+        allocRate(new AutoScalingDoubleMetric("allocRate", "bytes allocated per second, estimated from eden usage")) {
+            @Override
+            double value(Sample prev, Sample cur, double seconds) {
+                if (!available(prev.edenUsed, cur.edenUsed) || !available(prev.yngGcs, cur.yngGcs) || cur.edenCapacity < 0) {
+                    return Double.NaN;
+                }
+                return (cur.edenUsed - prev.edenUsed + (cur.yngGcs - prev.yngGcs) * (double) cur.edenCapacity) / seconds;
+            }
+        },
+        cpuPct(new RateMetric("cpuPct", "cpu usage in percent of a single cpu")) {
+            @Override
+            double value(Sample prev, Sample cur, double seconds) {
+                return available(prev.cpuTicks, cur.cpuTicks)
+                        ? 100d * (cur.cpuTicks - prev.cpuTicks) / CLOCK_TICKS_PER_SECOND / seconds : Double.NaN;
+            }
+        },
+        pgFltPerSec(new RateMetric("pgFltPerSec", "page faults (minor and major) per second")) {
+            @Override
+            double value(Sample prev, Sample cur, double seconds) {
+                return available(prev.pageFaults, cur.pageFaults) ? (cur.pageFaults - prev.pageFaults) / seconds : Double.NaN;
+            }
+        };
+
+        private final DoubleMetric m;
+
+        private Rate(DoubleMetric m) {
+            this.m = m;
+        }
+
+        public DoubleMetric metric() {
+            return m;
+        }
+
+        /**
+         * @param prev
+         * @param cur
+         * @param seconds
+         *            length of the interval between the samples, always positive
+         * @return the rate, or NaN if a counter is missing from either sample
+         */
+        abstract double value(Sample prev, Sample cur, double seconds);
+
+        private static boolean available(long prev, long cur) {
+            return prev >= 0 && cur >= 0;
+        }
+    }
+
+    /**
+     * The counters of a single VM and its previous sample.
+     */
+    private static final class State {
+        private final LongMonitor frequency;
+        private final LongMonitor ticks;
+        private final LongMonitor yngGcTime;
+        private final LongMonitor fullGcTime;
+        private final LongMonitor yngGcs;
+        private final LongMonitor fullGcs;
+        private final LongMonitor edenUsed;
+        private final LongMonitor edenCapacity;
+        private Sample previous;
+
+        State(MonitoredVm vm) throws MonitorException {
+            frequency = bind(vm, HRT_FREQUENCY);
+            ticks = bind(vm, HRT_TICKS);
+            yngGcTime = bind(vm, YNG_GC_TIME);
+            fullGcTime = bind(vm, FULL_GC_TIME);
+            yngGcs = bind(vm, YNG_GCS);
+            fullGcs = bind(vm, FULL_GCS);
+            edenUsed = bind(vm, EDEN_USED);
+            edenCapacity = bind(vm, EDEN_CAPACITY);
+        }
+
+        private static LongMonitor bind(MonitoredVm vm, String counter) throws MonitorException {
+            Monitor monitor = vm.findByName(counter);
+            return monitor instanceof LongMonitor ? (LongMonitor) monitor : null;
+        }
+
+        private static long value(LongMonitor monitor) {
+            return monitor == null ? -1 : monitor.longValue();
+        }
+    }
+
+    private static final List<Metric<?>> SUPPORTED_METRICS;
+    static {
+        List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+        for (Rate rate : Rate.values()) {
+            metrics.add(rate.metric());
+        }
+        SUPPORTED_METRICS = Collections.unmodifiableList(metrics);
+    }
+
+    /**
+     * States are kept for as long as the VM stays attached.
+     */
+    private final LoadingCache<MonitoredVm, State> states = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<MonitoredVm, State>() {
+                @Override
+                public State load(MonitoredVm vm) throws MonitorException {
+                    return new State(vm);
+                }
+            });
+
+    private final ProcFiles.Pool files = new ProcFiles.Pool();
+
+    @Override
+    public Collection<? extends Metric<?>> supportedMetrics() {
+        return SUPPORTED_METRICS;
+    }
+
+    @Override
+    public MeterCost getCost() {
+        return MeterCost.FILE;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return 0;
+    }
+
+    @Override
+    public Collection<? extends Measure<?>> measureData(MonitoredVm vm) {
+        return measureData(vm, Collections.<String> emptySet());
+    }
+
+    @Override
+    public Collection<? extends Measure<?>> measureData(MonitoredVm vm, Set<String> metricNames) {
+        List<Measure<?>> retval = new ArrayList<Measure<?>>(SUPPORTED_METRICS.size());
+        State state = states.getUnchecked(vm);
+        long frequency = State.value(state.frequency);
+        if (frequency <= 0) {
+            return retval;
+        }
+
+        Sample cur = sample(vm, state, metricNames);
+        Sample prev;
+        synchronized (state) {
+            prev = state.previous;
+            state.previous = cur;
+        }
+        if (prev == null || prev.ticks < 0 || cur.ticks <= prev.ticks) {
+            return retval;
+        }
+        double seconds = (cur.ticks - prev.ticks) / (double) frequency;
+
+        for (Rate rate : Rate.values()) {
+            if (!isRequested(rate.metric(), metricNames)) {
+                continue;
+            }
+            double value = rate.value(prev, cur, seconds);
+            if (!Double.isNaN(value)) {
+                retval.add(rate.metric().newMeasure(value));
+            }
+        }
+        return retval;
+    }
+
+    private Sample sample(MonitoredVm vm, State state, Set<String> metricNames) {
+        Sample sample = new Sample();
+        sample.ticks = State.value(state.ticks);
+        sample.gcTicks = State.value(state.yngGcTime);
+        if (sample.gcTicks >= 0 && state.fullGcTime != null) {
+            sample.gcTicks += state.fullGcTime.longValue();
+        }
+        sample.yngGcs = State.value(state.yngGcs);
+        sample.fullGcs = State.value(state.fullGcs);
+        sample.edenUsed = State.value(state.edenUsed);
+        sample.edenCapacity = State.value(state.edenCapacity);
+
+        sample.cpuTicks = -1;
+        sample.pageFaults = -1;
+        if (isRequested(Rate.cpuPct.metric(), metricNames) || isRequested(Rate.pgFltPerSec.metric(), metricNames)) {
+            File dir = new File(PROC, String.valueOf(vm.getVmIdentifier().getLocalVmId()));
+            ProcFiles pf = files.acquire();
+            try {
+                long[] fields = pf.readStat(dir, STAT_STIME);
+                sample.cpuTicks = fields[STAT_UTIME] + fields[STAT_STIME];
+                sample.pageFaults = fields[STAT_MINFLT] + fields[STAT_MAJFLT];
+            } catch (IOException e) {
+                log.debug("Error reading stat of [{}]: {}", dir, e);
+            } finally {
+                files.release(pf);
+            }
+        }
+        return sample;
+    }
+
+    private static boolean isRequested(Metric<?> metric, Set<String> metricNames) {
+        return metricNames.isEmpty() || metricNames.contains(metric.getName());
+    }
+}
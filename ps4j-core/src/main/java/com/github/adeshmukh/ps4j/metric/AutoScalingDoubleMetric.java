@@ -0,0 +1,43 @@
+package com.github.adeshmukh.ps4j.metric;
+
+import com.github.adeshmukh.ps4j.DoubleMeasure;
+import com.github.adeshmukh.ps4j.DoubleMetric;
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link AutoScalingMetric} of double values whose Measures keep the value unboxed.
+ *
+ * @author adeshmukh
+ */
+public class AutoScalingDoubleMetric extends AutoScalingMetric<Double> implements DoubleMetric {
+
+    public AutoScalingDoubleMetric(String name, String description) {
+        super(name, description);
+    }
+
+    @Override
+    public DoubleMeasure newMeasure(Double val) {
+        Preconditions.checkArgument(val != null, "val cannot be null");
+        return newMeasure(val.doubleValue());
+    }
+
+    @Override
+    public DoubleMeasure newMeasure(double val) {
+        return new AutoScalingDoubleMeasure(this, val);
+    }
+
+    static class AutoScalingDoubleMeasure extends SimpleDoubleMeasure {
+
+        public AutoScalingDoubleMeasure(AutoScalingDoubleMetric metric, double val) {
+            super(metric, val);
+        }
+
+        /**
+         * @see AutoScalingMetric#scale(double)
+         */
+        @Override
+        public String getDisplayValue() {
+            return scale(doubleValue());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.adeshmukh.ps4j.metric;
+
+import com.github.adeshmukh.ps4j.LongMeasure;
+import com.github.adeshmukh.ps4j.LongMetric;
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link AutoScalingMetric} of long values whose Measures keep the value unboxed.
+ *
+ * @author adeshmukh
+ */
+public class AutoScalingLongMetric extends AutoScalingMetric<Long> implements LongMetric {
+
+    public AutoScalingLongMetric(String name, String description) {
+        super(name, description);
+    }
+
+    @Override
+    public LongMeasure newMeasure(Long val) {
+        Preconditions.checkArgument(val != null, "val cannot be null");
+        return newMeasure(val.longValue());
+    }
+
+    @Override
+    public LongMeasure newMeasure(long val) {
+        return new AutoScalingLongMeasure(this, val);
+    }
+
+    static class AutoScalingLongMeasure extends SimpleLongMeasure {
+
+        public AutoScalingLongMeasure(AutoScalingLongMetric metric, long val) {
+            super(metric, val);
+        }
+
+        /**
+         * @see AutoScalingMetric#scale(double)
+         */
+        @Override
+        public String getDisplayValue() {
+            return scale(longValue());
+        }
+    }
+}
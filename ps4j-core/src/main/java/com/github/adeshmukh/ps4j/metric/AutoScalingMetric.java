@@ -15,8 +15,6 @@
  */
 package com.github.adeshmukh.ps4j.metric;
 
-import static java.lang.String.format;
-
 import com.github.adeshmukh.ps4j.Measure;
 import com.google.common.base.Preconditions;
 
@@ -35,9 +33,46 @@ public class AutoScalingMetric<V extends Comparable<V>> extends SimpleMetric<V>
         return new AutoScalingMeasure<V>(this, val);
     }
 
+    /**
+     * Scales the display value to an integer representation with the approprite suffix.
+     * Values less than 10000 are printed without suffix. Values greater than 10,000 are
+     * scaled down with appropriate suffix, e.g.
+     * 10,000 =&gt; 10m; 10,000,000 => 10g; 10,000,000,000 =&gt; 10t and so on with the
+     * last prefix being 'y': 10,000,000,000,000,000,000,000,000,000
+     * =&gt; 10y
+     */
+    static String scale(double d) {
+        double dAbs = Math.abs(d);
+        if (dAbs < 10000d) {
+            return String.valueOf((int) d);
+        }
+        if (dAbs < 10000000d) {
+            return (int) (d / 1000d) + "k";
+        }
+        if (dAbs < 10000000000d) {
+            return (int) (d / 1000000d) + "m";
+        }
+        if (dAbs < 10000000000000d) {
+            return (int) (d / 1000000000d) + "g";
+        }
+        if (dAbs < 10000000000000000d) {
+            return (int) (d / 1000000000000d) + "t";
+        }
+        if (dAbs < 10000000000000000000d) {
+            return (int) (d / 1000000000000d) + "p";
+        }
+        if (dAbs < 10000000000000000000000d) {
+            return (int) (d / 1000000000000000d) + "e";
+        }
+        if (dAbs < 10000000000000000000000000d) {
+            return (int) (d / 1000000000000000000d) + "z";
+        }
+        return (int) (d / 1000000000000000000000d) + "y";
+    }
+
     static class AutoScalingMeasure<V extends Comparable<V>> extends SimpleMetric.SimpleMeasure<V> {
 
-        private Number val;
+        private final double val;
 
         /**
          * The value must be an instance of {@link Number}, otherwise this method will throw an
@@ -50,46 +85,15 @@ public class AutoScalingMetric<V extends Comparable<V>> extends SimpleMetric<V>
             super(name, val);
             Preconditions.checkArgument(val != null, "val cannot be null");
             Preconditions.checkArgument(val instanceof Number, "val must be a Number (was: " + val.getClass());
-            this.val = (Number) val;
+            this.val = ((Number) val).doubleValue();
         }
 
         /**
-         * Scales the display value to an integer representation with the approprite suffix.
-         * Values less than 10000 are printed without suffix. Values greater than 10,000 are
-         * scaled down with appropriate suffix, e.g.
-         * 10,000 =&gt; 10m; 10,000,000 => 10g; 10,000,000,000 =&gt; 10t and so on with the
-         * last prefix being 'y': 10,000,000,000,000,000,000,000,000,000
-         * =&gt; 10y
+         * @see AutoScalingMetric#scale(double)
          */
         @Override
         public String getDisplayValue() {
-            double d = val.doubleValue();
-            double dAbs = Math.abs(d);
-            if (dAbs < 10000d) {
-                return format("%d", (int) d);
-            }
-            if (dAbs < 10000000d) {
-                return format("%dk", (int) (d / 1000d));
-            }
-            if (dAbs < 10000000000d) {
-                return format("%dm", (int) (d / 1000000d));
-            }
-            if (dAbs < 10000000000000d) {
-                return format("%dg", (int) (d / 1000000000d));
-            }
-            if (dAbs < 10000000000000000d) {
-                return format("%dt", (int) (d / 1000000000000d));
-            }
-            if (dAbs < 10000000000000000000d) {
-                return format("%dp", (int) (d / 1000000000000d));
-            }
-            if (dAbs < 10000000000000000000000d) {
-                return format("%de", (int) (d / 1000000000000000d));
-            }
-            if (dAbs < 10000000000000000000000000d) {
-                return format("%dz", (int) (d / 1000000000000000000d));
-            }
-            return format("%dy", (int) (d / 1000000000000000000000d));
+            return scale(val);
         }
 
         @Override
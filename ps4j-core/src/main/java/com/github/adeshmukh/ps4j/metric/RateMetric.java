@@ -0,0 +1,44 @@
+package com.github.adeshmukh.ps4j.metric;
+
+import com.github.adeshmukh.ps4j.DoubleMeasure;
+import com.github.adeshmukh.ps4j.DoubleMetric;
+import com.google.common.base.Preconditions;
+
+/**
+ * Metric for rates and percentages, which are displayed with one decimal since their values are often small.
+ *
+ * @author adeshmukh
+ */
+public class RateMetric extends SimpleMetric<Double> implements DoubleMetric {
+
+    public RateMetric(String name, String description) {
+        super(name, description);
+    }
+
+    @Override
+    public DoubleMeasure newMeasure(Double val) {
+        Preconditions.checkArgument(val != null, "val cannot be null");
+        return newMeasure(val.doubleValue());
+    }
+
+    @Override
+    public DoubleMeasure newMeasure(double val) {
+        return new RateMeasure(this, val);
+    }
+
+    static class RateMeasure extends SimpleDoubleMeasure {
+
+        public RateMeasure(RateMetric name, double val) {
+            super(name, val);
+        }
+
+        /**
+         * Values printed with one decimal, e.g. 0.5 or 12.0
+         */
+        @Override
+        public String getDisplayValue() {
+            long tenths = Math.round(doubleValue() * 10);
+            return (tenths < 0 ? "-" : "") + Math.abs(tenths / 10) + "." + Math.abs(tenths % 10);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.github.adeshmukh.ps4j.metric;
 
+import com.github.adeshmukh.ps4j.DoubleMeasure;
+import com.github.adeshmukh.ps4j.DoubleMetric;
+import com.github.adeshmukh.ps4j.LongMeasure;
+import com.github.adeshmukh.ps4j.LongMetric;
 import com.github.adeshmukh.ps4j.Measure;
 import com.github.adeshmukh.ps4j.Metric;
 import com.google.common.base.Preconditions;
@@ -77,4 +81,96 @@ public class SimpleMetric<V extends Comparable<V>> implements Metric<V> {
         }
     }
 
+    /**
+     * Measure of a {@link LongMetric} that keeps the value unboxed, boxing it only when {@link #getValue()} is called.
+     */
+    static class SimpleLongMeasure implements LongMeasure {
+
+        private final long val;
+        private final LongMetric metric;
+
+        public SimpleLongMeasure(LongMetric metric, long val) {
+            this.val = val;
+            this.metric = metric;
+        }
+
+        @Override
+        public Metric<Long> getMetric() {
+            return metric;
+        }
+
+        @Override
+        public Long getValue() {
+            return val;
+        }
+
+        @Override
+        public long longValue() {
+            return val;
+        }
+
+        @Override
+        public String getDisplayValue() {
+            return String.valueOf(val);
+        }
+
+        @Override
+        public int compareTo(Measure<Long> o) {
+            Preconditions.checkArgument(o.getMetric().getClass() == this.getMetric().getClass(), "Measures of different Metrics cannot be compared");
+            long that = o instanceof LongMeasure ? ((LongMeasure) o).longValue() : o.getValue();
+            return val < that ? -1 : (val == that ? 0 : 1);
+        }
+
+        @Override
+        public String toString() {
+            return getDisplayValue();
+        }
+    }
+
+    /**
+     * Measure of a {@link DoubleMetric} that keeps the value unboxed, boxing it only when {@link #getValue()} is
+     * called.
+     */
+    static class SimpleDoubleMeasure implements DoubleMeasure {
+
+        private final double val;
+        private final DoubleMetric metric;
+
+        public SimpleDoubleMeasure(DoubleMetric metric, double val) {
+            this.val = val;
+            this.metric = metric;
+        }
+
+        @Override
+        public Metric<Double> getMetric() {
+            return metric;
+        }
+
+        @Override
+        public Double getValue() {
+            return val;
+        }
+
+        @Override
+        public double doubleValue() {
+            return val;
+        }
+
+        @Override
+        public String getDisplayValue() {
+            return String.valueOf(val);
+        }
+
+        @Override
+        public int compareTo(Measure<Double> o) {
+            Preconditions.checkArgument(o.getMetric().getClass() == this.getMetric().getClass(), "Measures of different Metrics cannot be compared");
+            double that = o instanceof DoubleMeasure ? ((DoubleMeasure) o).doubleValue() : o.getValue();
+            return Double.compare(val, that);
+        }
+
+        @Override
+        public String toString() {
+            return getDisplayValue();
+        }
+    }
 }
@@ -1,28 +1,36 @@
 package com.github.adeshmukh.ps4j.metric;
 
-import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.LongMeasure;
+import com.github.adeshmukh.ps4j.LongMetric;
+import com.google.common.base.Preconditions;
 
 
-public class TimeMetric extends SimpleMetric<Long> {
+public class TimeMetric extends SimpleMetric<Long> implements LongMetric {
 
     public TimeMetric(String name, String description) {
         super(name, description);
     }
 
     @Override
-    public Measure<Long> newMeasure(Long val) {
+    public LongMeasure newMeasure(Long val) {
+        Preconditions.checkArgument(val != null, "val cannot be null");
+        return newMeasure(val.longValue());
+    }
+
+    @Override
+    public LongMeasure newMeasure(long val) {
         return new TimeMeasure(this, val);
     }
 
-    static class TimeMeasure extends SimpleMeasure<Long> {
+    static class TimeMeasure extends SimpleLongMeasure {
 
-        public TimeMeasure(TimeMetric name, Long val) {
+        public TimeMeasure(TimeMetric name, long val) {
             super(name, val);
         }
 
         @Override
         public String getDisplayValue() {
-            long v = getValue();
+            long v = longValue();
             if (v < 60) {
                 return v + "s";
             }
@@ -0,0 +1,136 @@
+package com.github.adeshmukh.ps4j.perfdata;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Set;
+
+import sun.jvmstat.monitor.HostIdentifier;
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredHost;
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.VmIdentifier;
+import sun.jvmstat.monitor.event.HostListener;
+
+/**
+ * {@link MonitoredHost} for the local host that discovers VMs from the hsperfdata directories and attaches to them by
+ * memory mapping their hsperfdata file (see {@link PerfDataBuffer}), without going through the jvmstat implementation.
+ *
+ * @author adeshmukh
+ */
+@SuppressWarnings("restriction")
+public class MappedMonitoredHost extends MonitoredHost {
+
+    private static final String HSPERFDATA_PREFIX = "hsperfdata_";
+
+    private static final FileFilter HSPERFDATA_DIRS = new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+            return f.isDirectory() && f.getName().startsWith(HSPERFDATA_PREFIX);
+        }
+    };
+
+    /**
+     * Directory in which HotSpot creates the hsperfdata directories: <code>/tmp</code> on Linux and Solaris, whatever
+     * <code>java.io.tmpdir</code> is set to, and the default temporary directory of the platform elsewhere.
+     */
+    public static final File DEFAULT_TMP_DIR = defaultTmpDir();
+
+    private final File tmpDir;
+
+    public MappedMonitoredHost() throws URISyntaxException {
+        this(DEFAULT_TMP_DIR);
+    }
+
+    /**
+     * @param tmpDir
+     *            directory containing the <code>hsperfdata_&lt;user&gt;</code> directories
+     * @throws URISyntaxException
+     */
+    public MappedMonitoredHost(File tmpDir) throws URISyntaxException {
+        this.tmpDir = tmpDir;
+        this.hostId = new HostIdentifier("localhost");
+    }
+
+    private static File defaultTmpDir() {
+        String osName = System.getProperty("os.name", "");
+        if (osName.startsWith("Linux") || osName.startsWith("SunOS")) {
+            return new File("/tmp");
+        }
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * The hsperfdata directories of all users, readable or not.
+     *
+     * @return
+     */
+    public File[] hsperfdataDirs() {
+        File[] dirs = tmpDir.listFiles(HSPERFDATA_DIRS);
+        return dirs == null ? new File[0] : dirs;
+    }
+
+    @Override
+    public Set<Integer> activeVms() throws MonitorException {
+        Set<Integer> retval = new HashSet<Integer>();
+        for (File dir : hsperfdataDirs()) {
+            String[] names = dir.list();
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                Integer pid = parsePid(name);
+                if (pid != null && new File(dir, name).canRead()) {
+                    retval.add(pid);
+                }
+            }
+        }
+        return retval;
+    }
+
+    @Override
+    public MonitoredVm getMonitoredVm(VmIdentifier vmId) throws MonitorException {
+        String name = String.valueOf(vmId.getLocalVmId());
+        for (File dir : hsperfdataDirs()) {
+            File file = new File(dir, name);
+            if (file.canRead()) {
+                try {
+                    return new MappedMonitoredVm(vmId, PerfDataBuffer.map(file));
+                } catch (IOException e) {
+                    throw new MonitorException(e);
+                }
+            }
+        }
+        throw new MonitorException("No hsperfdata file found for vm " + name);
+    }
+
+    @Override
+    public MonitoredVm getMonitoredVm(VmIdentifier vmId, int interval) throws MonitorException {
+        return getMonitoredVm(vmId);
+    }
+
+    @Override
+    public void detach(MonitoredVm vm) throws MonitorException {
+        vm.detach();
+    }
+
+    @Override
+    public void addHostListener(HostListener listener) throws MonitorException {
+        throw new MonitorException("HostListeners are not supported by " + getClass().getSimpleName());
+    }
+
+    @Override
+    public void removeHostListener(HostListener listener) throws MonitorException {
+        throw new MonitorException("HostListeners are not supported by " + getClass().getSimpleName());
+    }
+
+    private static Integer parsePid(String name) {
+        try {
+            return Integer.valueOf(name);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
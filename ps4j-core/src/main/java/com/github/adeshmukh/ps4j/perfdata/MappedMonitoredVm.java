@@ -0,0 +1,97 @@
+package com.github.adeshmukh.ps4j.perfdata;
+
+import java.util.List;
+
+import sun.jvmstat.monitor.Monitor;
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.VmIdentifier;
+import sun.jvmstat.monitor.event.VmListener;
+
+/**
+ * {@link MonitoredVm} backed by a {@link PerfDataBuffer}. Event notification is not supported since the counters are
+ * only read on demand.
+ *
+ * @author adeshmukh
+ */
+@SuppressWarnings("restriction")
+public class MappedMonitoredVm implements MonitoredVm {
+
+    private final VmIdentifier vmId;
+    private volatile PerfDataBuffer buffer;
+    private volatile Exception lastException;
+
+    MappedMonitoredVm(VmIdentifier vmId, PerfDataBuffer buffer) {
+        this.vmId = vmId;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public VmIdentifier getVmIdentifier() {
+        return vmId;
+    }
+
+    @Override
+    public Monitor findByName(String name) throws MonitorException {
+        return buffer().findByName(name);
+    }
+
+    @Override
+    public List<Monitor> findByPattern(String pattern) throws MonitorException {
+        return buffer().findByPattern(pattern);
+    }
+
+    /**
+     * Drops the reference to the mapped buffer; the mapping itself is released once the buffer is garbage collected.
+     */
+    @Override
+    public void detach() {
+        buffer = null;
+    }
+
+    @Override
+    public void setInterval(int interval) {}
+
+    @Override
+    public int getInterval() {
+        return 0;
+    }
+
+    @Override
+    public void setLastException(Exception e) {
+        lastException = e;
+    }
+
+    @Override
+    public Exception getLastException() {
+        return lastException;
+    }
+
+    @Override
+    public void clearLastException() {
+        lastException = null;
+    }
+
+    @Override
+    public boolean isErrored() {
+        return lastException != null;
+    }
+
+    @Override
+    public void addVmListener(VmListener listener) throws MonitorException {
+        throw new MonitorException("VmListeners are not supported by " + getClass().getSimpleName());
+    }
+
+    @Override
+    public void removeVmListener(VmListener listener) throws MonitorException {
+        throw new MonitorException("VmListeners are not supported by " + getClass().getSimpleName());
+    }
+
+    private PerfDataBuffer buffer() throws MonitorException {
+        PerfDataBuffer b = buffer;
+        if (b == null) {
+            throw new MonitorException("Detached from vm " + vmId.getLocalVmId());
+        }
+        return b;
+    }
+}
@@ -0,0 +1,207 @@
+package com.github.adeshmukh.ps4j.perfdata;
+
+import static com.google.common.io.Closeables.closeQuietly;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import sun.jvmstat.monitor.AbstractMonitor;
+import sun.jvmstat.monitor.LongMonitor;
+import sun.jvmstat.monitor.Monitor;
+import sun.jvmstat.monitor.StringMonitor;
+import sun.jvmstat.monitor.Units;
+import sun.jvmstat.monitor.Variability;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Read-only view of the hsperfdata file of a Hotspot VM (version 2 of the PerfData format), memory mapped directly
+ * from the file system.
+ * <p>
+ * The prologue and the entry table are parsed once; entries that the VM creates later are picked up the next time an
+ * unknown counter is looked up. Each {@link Monitor} returned by this buffer reads its value at a fixed offset of the
+ * mapped file, so sampling a counter involves no copying.
+ *
+ * @author adeshmukh
+ */
+@SuppressWarnings("restriction")
+public final class PerfDataBuffer {
+
+    private static final int MAGIC = 0xcafec0c0;
+    private static final int SUPPORTED_MAJOR_VERSION = 2;
+
+    // PerfDataPrologue offsets
+    private static final int BYTE_ORDER_OFFSET = 4;
+    private static final int MAJOR_VERSION_OFFSET = 5;
+    private static final int ENTRY_OFFSET_OFFSET = 24;
+    private static final int NUM_ENTRIES_OFFSET = 28;
+
+    // PerfDataEntry offsets, relative to the start of the entry
+    private static final int NAME_OFFSET_OFFSET = 4;
+    private static final int VECTOR_LENGTH_OFFSET = 8;
+    private static final int DATA_TYPE_OFFSET = 12;
+    private static final int FLAGS_OFFSET = 13;
+    private static final int DATA_UNITS_OFFSET = 14;
+    private static final int DATA_VARIABILITY_OFFSET = 15;
+    private static final int DATA_OFFSET_OFFSET = 16;
+
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_BYTE = 'B';
+    private static final int FLAG_SUPPORTED = 0x01;
+
+    private final ByteBuffer buffer;
+    private final ConcurrentMap<String, Monitor> monitors = new ConcurrentHashMap<String, Monitor>();
+    private int nextEntry;
+    private int numScanned;
+
+    private PerfDataBuffer(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < NUM_ENTRIES_OFFSET + 4 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a hsperfdata file");
+        }
+        if (buffer.get(BYTE_ORDER_OFFSET) != 0) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.get(MAJOR_VERSION_OFFSET) != SUPPORTED_MAJOR_VERSION) {
+            throw new IOException("Unsupported hsperfdata version " + buffer.get(MAJOR_VERSION_OFFSET));
+        }
+        this.buffer = buffer;
+        this.nextEntry = buffer.getInt(ENTRY_OFFSET_OFFSET);
+        scan();
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param file
+     *            hsperfdata file, typically <code>/tmp/hsperfdata_&lt;user&gt;/&lt;pid&gt;</code>
+     * @return
+     * @throws IOException
+     */
+    public static PerfDataBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new PerfDataBuffer(raf.getChannel().map(READ_ONLY, 0, raf.length()));
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    public Monitor findByName(String name) {
+        Monitor monitor = monitors.get(name);
+        if (monitor == null && numScanned < buffer.getInt(NUM_ENTRIES_OFFSET)) {
+            scan();
+            monitor = monitors.get(name);
+        }
+        return monitor;
+    }
+
+    public List<Monitor> findByPattern(String patternString) {
+        scan();
+        Pattern pattern = Pattern.compile(patternString);
+        List<Monitor> retval = new ArrayList<Monitor>();
+        for (Monitor monitor : monitors.values()) {
+            if (pattern.matcher(monitor.getName()).matches()) {
+                retval.add(monitor);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Index the entries added to the table since the last scan.
+     */
+    private synchronized void scan() {
+        int numEntries = buffer.getInt(NUM_ENTRIES_OFFSET);
+        while (numScanned < numEntries) {
+            int start = nextEntry;
+            int entryLength = buffer.getInt(start);
+            if (entryLength <= 0 || start + entryLength > buffer.limit()) {
+                break; // entry is still being written by the VM
+            }
+            Monitor monitor = newMonitor(start);
+            if (monitor != null) {
+                monitors.put(monitor.getName(), monitor);
+            }
+            nextEntry += entryLength;
+            numScanned++;
+        }
+    }
+
+    private Monitor newMonitor(int start) {
+        String name = cString(start + buffer.getInt(start + NAME_OFFSET_OFFSET), buffer.limit());
+        int vectorLength = buffer.getInt(start + VECTOR_LENGTH_OFFSET);
+        byte type = buffer.get(start + DATA_TYPE_OFFSET);
+        boolean supported = (buffer.get(start + FLAGS_OFFSET) & FLAG_SUPPORTED) != 0;
+        Units units = Units.toUnits(buffer.get(start + DATA_UNITS_OFFSET));
+        Variability variability = Variability.toVariability(buffer.get(start + DATA_VARIABILITY_OFFSET));
+        int dataOffset = start + buffer.getInt(start + DATA_OFFSET_OFFSET);
+
+        if (type == TYPE_LONG && vectorLength == 0) {
+            return new LongEntry(name, units, variability, supported, dataOffset);
+        }
+        if (type == TYPE_BYTE && vectorLength > 0) {
+            return new StringEntry(name, units, variability, supported, dataOffset, vectorLength);
+        }
+        return null;
+    }
+
+    private String cString(int offset, int limit) {
+        int end = offset;
+        while (end < limit && buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - offset];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private final class LongEntry extends AbstractMonitor implements LongMonitor {
+        private final int dataOffset;
+
+        LongEntry(String name, Units units, Variability variability, boolean supported, int dataOffset) {
+            super(name, units, variability, supported);
+            this.dataOffset = dataOffset;
+        }
+
+        @Override
+        public long longValue() {
+            return buffer.getLong(dataOffset);
+        }
+
+        @Override
+        public Object getValue() {
+            return Long.valueOf(longValue());
+        }
+    }
+
+    private final class StringEntry extends AbstractMonitor implements StringMonitor {
+        private final int dataOffset;
+
+        StringEntry(String name, Units units, Variability variability, boolean supported, int dataOffset, int vectorLength) {
+            super(name, units, variability, supported, vectorLength);
+            this.dataOffset = dataOffset;
+        }
+
+        @Override
+        public String stringValue() {
+            return cString(dataOffset, Math.min(dataOffset + vectorLength, buffer.limit()));
+        }
+
+        @Override
+        public Object getValue() {
+            return stringValue();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.adeshmukh.ps4j.perfdata;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Maintains the set of VMs running on the local host from the contents of the <code>hsperfdata_&lt;user&gt;</code>
+ * directories, notifying {@link VmDiscoveryListener}s of the VMs that started or exited.
+ * <p>
+ * A directory is only listed again when its modification time changes, so that a {@link #refresh()} on a host where
+ * no VM started or exited costs a few <code>stat</code> calls rather than a listing of every directory. Since a killed
+ * VM leaves its hsperfdata file behind, VMs are also checked against <code>/proc</code> where it is available.
+ * <p>
+ * The VMs can also be listed by another source, e.g. {@link sun.jvmstat.monitor.MonitoredHost#activeVms()}, and passed
+ * to {@link #update(Set)} to notify the listeners.
+ *
+ * @author adeshmukh
+ */
+public class VmDiscovery {
+
+    /**
+     * Directories modified within this window are listed regardless of their modification time, to cover file systems
+     * with a coarse timestamp resolution.
+     */
+    private static final long MTIME_RESOLUTION_MILLIS = 2000;
+
+    private static final String HSPERFDATA_PREFIX = "hsperfdata_";
+
+    private static final File PROC = new File("/proc");
+
+    private final File tmpDir;
+    private final boolean checkProc;
+    private final List<VmDiscoveryListener> listeners = new CopyOnWriteArrayList<VmDiscoveryListener>();
+
+    private long tmpDirModified = Long.MIN_VALUE;
+    private final Map<File, Long> dirModified = new HashMap<File, Long>();
+    private final Map<File, Set<Integer>> dirVms = new HashMap<File, Set<Integer>>();
+    private Set<Integer> activeVms = Collections.emptySet();
+
+    public VmDiscovery() {
+        this(MappedMonitoredHost.DEFAULT_TMP_DIR);
+    }
+
+    /**
+     * @param tmpDir
+     *            directory containing the <code>hsperfdata_&lt;user&gt;</code> directories
+     */
+    public VmDiscovery(File tmpDir) {
+        this.tmpDir = tmpDir;
+        this.checkProc = PROC.isDirectory();
+    }
+
+    public void addListener(VmDiscoveryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(VmDiscoveryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The VMs found by the last {@link #refresh()} or {@link #update(Set)}.
+     *
+     * @return
+     */
+    public synchronized Set<Integer> activeVms() {
+        return activeVms;
+    }
+
+    /**
+     * Update the set of active VMs, listing only the directories that changed since the last refresh.
+     *
+     * @return the active VMs
+     */
+    public synchronized Set<Integer> refresh() {
+        long now = System.currentTimeMillis();
+
+        long modified = tmpDir.lastModified();
+        if (isChanged(modified, tmpDirModified, now)) {
+            tmpDirModified = modified;
+            refreshDirs();
+        }
+
+        Set<Integer> vms = new HashSet<Integer>();
+        for (Map.Entry<File, Set<Integer>> entry : dirVms.entrySet()) {
+            File dir = entry.getKey();
+            modified = dir.lastModified();
+            if (isChanged(modified, dirModified.get(dir), now)) {
+                dirModified.put(dir, modified);
+                entry.setValue(listVms(dir));
+            }
+            vms.addAll(entry.getValue());
+        }
+        if (checkProc) {
+            for (Iterator<Integer> it = vms.iterator(); it.hasNext();) {
+                if (!new File(PROC, it.next().toString()).exists()) {
+                    it.remove();
+                }
+            }
+        }
+        return update(vms, now);
+    }
+
+    /**
+     * Replace the set of active VMs with VMs listed by another source, notifying the listeners of the differences.
+     *
+     * @param vms
+     * @return the active VMs
+     */
+    public synchronized Set<Integer> update(Set<Integer> vms) {
+        return update(new HashSet<Integer>(vms), System.currentTimeMillis());
+    }
+
+    private Set<Integer> update(Set<Integer> vms, long now) {
+        for (Integer vmId : vms) {
+            if (!activeVms.contains(vmId)) {
+                for (VmDiscoveryListener listener : listeners) {
+                    listener.vmStarted(vmId, now);
+                }
+            }
+        }
+        for (Integer vmId : activeVms) {
+            if (!vms.contains(vmId)) {
+                for (VmDiscoveryListener listener : listeners) {
+                    listener.vmExited(vmId, now);
+                }
+            }
+        }
+        activeVms = Collections.unmodifiableSet(vms);
+        return activeVms;
+    }
+
+    private static boolean isChanged(long modified, Long lastModified, long now) {
+        return lastModified == null || modified != lastModified || now - modified < MTIME_RESOLUTION_MILLIS;
+    }
+
+    private void refreshDirs() {
+        Set<File> dirs = new HashSet<File>();
+        String[] names = tmpDir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(HSPERFDATA_PREFIX)) {
+                    dirs.add(new File(tmpDir, name));
+                }
+            }
+        }
+        dirVms.keySet().retainAll(dirs);
+        dirModified.keySet().retainAll(dirs);
+        for (File dir : dirs) {
+            if (!dirVms.containsKey(dir)) {
+                dirVms.put(dir, Collections.<Integer> emptySet());
+            }
+        }
+    }
+
+    private static Set<Integer> listVms(File dir) {
+        String[] names = dir.list();
+        if (names == null) {
+            return Collections.emptySet();
+        }
+        Set<Integer> retval = new HashSet<Integer>(names.length);
+        for (String name : names) {
+            try {
+                retval.add(Integer.valueOf(name));
+            } catch (NumberFormatException e) {
+                // not a VM
+            }
+        }
+        return retval;
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.adeshmukh.ps4j.perfdata;
+
+/**
+ * Callback for VMs appearing on and disappearing from the local host, see {@link VmDiscovery}.
+ *
+ * @author adeshmukh
+ */
+public interface VmDiscoveryListener {
+
+    /**
+     * @param vmId
+     *            local vm id (pid)
+     * @param timestamp
+     *            time (millis since epoch) at which the VM was discovered
+     */
+    void vmStarted(int vmId, long timestamp);
+
+    /**
+     * @param vmId
+     *            local vm id (pid)
+     * @param timestamp
+     *            time (millis since epoch) at which the exit of the VM was discovered
+     */
+    void vmExited(int vmId, long timestamp);
+}
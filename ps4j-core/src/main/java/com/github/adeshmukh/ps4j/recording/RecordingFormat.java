@@ -0,0 +1,117 @@
+package com.github.adeshmukh.ps4j.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Layout of a recording file. All numbers are big endian.
+ *
+ * <pre>
+ * file    := header block*
+ * header  := magic:int version:short reserved:short
+ * block   := length:int type:byte payload[length]
+ *
+ * DICTIONARY payload := metricId:int name:string description:string
+ * SWEEP payload      := sweep:int timestamp:long n:int vmId:int[n] flags:byte[n] numColumns:short column[numColumns]
+ * column             := metricId:int kind:byte present:bitmap[(n + 7) / 8] value[number of rows present]
+ * string             := length:short utf8:byte[length]
+ * </pre>
+ *
+ * A metric is described by a DICTIONARY block before the first SWEEP block that refers to it. Each column holds the
+ * values of one kind for one metric, so a metric whose values differ in type across VMs takes more than one column.
+ * Blocks are only ever appended; a block of type 0 or one that extends beyond the end of the file marks the end of the
+ * recording, e.g. after a crash of the writer.
+ *
+ * @author adeshmukh
+ */
+final class RecordingFormat {
+
+    static final int MAGIC = 0x50534A52; // "PSJR"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = 5;
+
+    static final byte DICTIONARY = 1;
+    static final byte SWEEP = 2;
+
+    static final byte FLAG_TIMED_OUT = 1;
+
+    static final byte KIND_LONG = 1;
+    static final byte KIND_INTEGER = 2;
+    static final byte KIND_DOUBLE = 3;
+    static final byte KIND_STRING = 4;
+    static final byte KIND_DATE = 5;
+
+    static final Charset UTF_8 = Charsets.UTF_8;
+
+    private RecordingFormat() {}
+
+    /**
+     * Callback for the blocks found by {@link RecordingFormat#scan(ByteBuffer, BlockVisitor)}.
+     */
+    interface BlockVisitor {
+
+        /**
+         * @param type
+         * @param payload
+         *            buffer positioned at the start of the payload, limited to its end
+         * @param offset
+         *            of the block in the file
+         */
+        void visit(byte type, ByteBuffer payload, int offset);
+    }
+
+    static void writeHeader(ByteBuffer buf) {
+        buf.putInt(MAGIC);
+        buf.putShort(VERSION);
+        buf.putShort((short) 0);
+    }
+
+    /**
+     * Visit the complete blocks of the recording.
+     *
+     * @param recording
+     *            the whole file
+     * @param visitor
+     * @return offset of the end of the last complete block, where the next block is to be appended
+     * @throws IOException
+     *             if the file is not a recording
+     */
+    static int scan(ByteBuffer recording, BlockVisitor visitor) throws IOException {
+        if (recording.limit() < HEADER_SIZE || recording.getInt(0) != MAGIC) {
+            throw new IOException("Not a ps4j recording");
+        }
+        if (recording.getShort(4) != VERSION) {
+            throw new IOException("Unsupported recording version " + recording.getShort(4));
+        }
+        int pos = HEADER_SIZE;
+        while (pos + BLOCK_HEADER_SIZE <= recording.limit()) {
+            int length = recording.getInt(pos);
+            byte type = recording.get(pos + 4);
+            if (type == 0 || length < 0 || pos + BLOCK_HEADER_SIZE + length > recording.limit()) {
+                break;
+            }
+            ByteBuffer payload = recording.duplicate();
+            payload.limit(pos + BLOCK_HEADER_SIZE + length).position(pos + BLOCK_HEADER_SIZE);
+            visitor.visit(type, payload.slice(), pos);
+            pos += BLOCK_HEADER_SIZE + length;
+        }
+        return pos;
+    }
+
+    static void putString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE);
+        buf.putShort((short) length);
+        buf.put(bytes, 0, length);
+    }
+
+    static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.adeshmukh.ps4j.recording;
+
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.BLOCK_HEADER_SIZE;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.DICTIONARY;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.FLAG_TIMED_OUT;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_DATE;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_DOUBLE;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_INTEGER;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_LONG;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.SWEEP;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Meter;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.MetricRegistry;
+import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.RecordBatch;
+import com.github.adeshmukh.ps4j.SweepListener;
+import com.github.adeshmukh.ps4j.metric.SimpleMetric;
+
+/**
+ * Reads back a recording written by {@link RecordingWriter}. The file is memory mapped and scanned once on opening to
+ * build an index of the sweeps by timestamp, so that replaying a time range only decodes the sweeps in that range.
+ * <p>
+ * Measures are recreated with the Metrics of the specified Meters, so that they are displayed as when they were
+ * recorded. Metrics that none of the Meters support are recreated as plain {@link SimpleMetric}s.
+ *
+ * @author adeshmukh
+ */
+public class RecordingReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final ByteBuffer recording;
+    private final Map<String, Metric<?>> knownMetrics = new HashMap<String, Metric<?>>();
+    private final Map<Integer, Metric<?>> metrics = new HashMap<Integer, Metric<?>>();
+    private final MetricRegistry registry = new MetricRegistry();
+    private long[] timestamps = new long[256];
+    private int[] offsets = new int[256];
+    private int numSweeps;
+
+    /**
+     * @param recording
+     * @param meters
+     *            Meters whose Metrics are used to recreate the Measures
+     * @throws IOException
+     *             if the file cannot be read or is not a recording
+     */
+    public RecordingReader(File recording, Iterable<? extends Meter> meters) throws IOException {
+        for (Meter meter : meters) {
+            for (Metric<?> metric : meter.supportedMetrics()) {
+                knownMetrics.put(metric.getName(), metric);
+            }
+        }
+        file = new RandomAccessFile(recording, "r");
+        try {
+            if (file.length() > Integer.MAX_VALUE) {
+                throw new IOException("Recording too large: " + recording);
+            }
+            this.recording = file.getChannel().map(MapMode.READ_ONLY, 0, file.length());
+            RecordingFormat.scan(this.recording, new RecordingFormat.BlockVisitor() {
+                @Override
+                public void visit(byte type, ByteBuffer payload, int offset) {
+                    if (type == DICTIONARY) {
+                        int metricId = payload.getInt();
+                        String name = RecordingFormat.getString(payload);
+                        String description = RecordingFormat.getString(payload);
+                        Metric<?> metric = knownMetrics.get(name);
+                        metrics.put(metricId, metric != null ? metric : newMetric(name, description));
+                    } else if (type == SWEEP) {
+                        index(payload.getLong(4), offset);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void index(long timestamp, int offset) {
+        if (numSweeps == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, numSweeps * 2);
+            offsets = Arrays.copyOf(offsets, numSweeps * 2);
+        }
+        // sweeps are appended in time order, unless the clock was set back
+        timestamps[numSweeps] = numSweeps > 0 ? Math.max(timestamp, timestamps[numSweeps - 1]) : timestamp;
+        offsets[numSweeps] = offset;
+        numSweeps++;
+    }
+
+    public int getSweepCount() {
+        return numSweeps;
+    }
+
+    /**
+     * @return timestamp of the first sweep, or -1 if there are none
+     */
+    public long getStartTime() {
+        return numSweeps == 0 ? -1 : timestamps[0];
+    }
+
+    /**
+     * @return timestamp of the last sweep, or -1 if there are none
+     */
+    public long getEndTime() {
+        return numSweeps == 0 ? -1 : timestamps[numSweeps - 1];
+    }
+
+    /**
+     * Feed the sweeps recorded in the time range to the listener, in the order in which they were recorded. The
+     * Records of each sweep are passed as a {@link RecordBatch} with the recorded timestamp.
+     *
+     * @param from
+     *            earliest timestamp, inclusive
+     * @param to
+     *            latest timestamp, inclusive
+     * @param listener
+     */
+    public void replay(long from, long to, SweepListener listener) {
+        for (int i = firstSweepAtOrAfter(from); i < numSweeps && timestamps[i] <= to; i++) {
+            ByteBuffer payload = recording.duplicate();
+            payload.position(offsets[i] + BLOCK_HEADER_SIZE);
+            int sweep = payload.getInt();
+            RecordBatch.Builder records = RecordBatch.builder(registry).timestamp(payload.getLong());
+            for (Record record : readRecords(payload)) {
+                records.add(record);
+            }
+            listener.sweepCompleted(sweep, records.build());
+        }
+    }
+
+    private int firstSweepAtOrAfter(long timestamp) {
+        int low = 0;
+        int high = numSweeps;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private List<Record> readRecords(ByteBuffer payload) {
+        int numRows = payload.getInt();
+        List<Record> records = new ArrayList<Record>(numRows);
+        for (int row = 0; row < numRows; row++) {
+            records.add(Record.create(payload.getInt()));
+        }
+        for (int row = 0; row < numRows; row++) {
+            if ((payload.get() & FLAG_TIMED_OUT) != 0) {
+                records.get(row).markTimedOut();
+            }
+        }
+
+        List<List<Measure<?>>> measures = new ArrayList<List<Measure<?>>>(numRows);
+        for (int row = 0; row < numRows; row++) {
+            measures.add(new ArrayList<Measure<?>>());
+        }
+        byte[] present = new byte[(numRows + 7) / 8];
+        for (int numColumns = payload.getShort(); numColumns > 0; numColumns--) {
+            Metric<?> metric = metrics.get(payload.getInt());
+            byte kind = payload.get();
+            payload.get(present);
+            for (int row = 0; row < numRows; row++) {
+                if ((present[row >>> 3] & (1 << (row & 7))) != 0) {
+                    measures.get(row).add(newMeasure(metric, readValue(kind, payload)));
+                }
+            }
+        }
+        for (int row = 0; row < numRows; row++) {
+            records.get(row).addAll(measures.get(row));
+        }
+        return records;
+    }
+
+    private static Comparable<?> readValue(byte kind, ByteBuffer payload) {
+        switch (kind) {
+        case KIND_LONG:
+            return payload.getLong();
+        case KIND_INTEGER:
+            return payload.getInt();
+        case KIND_DOUBLE:
+            return payload.getDouble();
+        case KIND_DATE:
+            return new Date(payload.getLong());
+        default:
+            return RecordingFormat.getString(payload);
+        }
+    }
+
+    /**
+     * Recreate the measure with the Metric, falling back to a {@link SimpleMetric} if the value is not of the type of
+     * the Metric, e.g. because the Meter changed since the recording was made.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Measure<?> newMeasure(Metric<?> metric, Comparable<?> value) {
+        try {
+            return ((Metric) metric).newMeasure(value);
+        } catch (ClassCastException e) {
+            return newMetric(metric.getName(), metric.getDescription()).newMeasure(value);
+        } catch (IllegalArgumentException e) {
+            return newMetric(metric.getName(), metric.getDescription()).newMeasure(value);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Metric newMetric(String name, String description) {
+        return new SimpleMetric(name, description);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
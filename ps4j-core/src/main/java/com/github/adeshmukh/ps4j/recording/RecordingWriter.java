@@ -0,0 +1,294 @@
+package com.github.adeshmukh.ps4j.recording;
+
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.BLOCK_HEADER_SIZE;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.DICTIONARY;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.FLAG_TIMED_OUT;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.HEADER_SIZE;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_DATE;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_DOUBLE;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_INTEGER;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_LONG;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.KIND_STRING;
+import static com.github.adeshmukh.ps4j.recording.RecordingFormat.SWEEP;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.adeshmukh.ps4j.Measure;
+import com.github.adeshmukh.ps4j.Metric;
+import com.github.adeshmukh.ps4j.Record;
+import com.github.adeshmukh.ps4j.RecordBatch;
+import com.github.adeshmukh.ps4j.SweepListener;
+import com.google.common.base.Throwables;
+
+/**
+ * Appends the Records of each sweep to a recording file, in the format described by {@link RecordingFormat}. The file
+ * is written through a memory mapping that is extended as the recording grows, so that writing a sweep costs no
+ * system calls in the common case. Writing to an existing recording continues after its last complete block.
+ * <p>
+ * The file is truncated to the end of the last block on {@link #close()}. A recording that was not closed, e.g.
+ * because the writer was killed, ends with zeros that are skipped on reading.
+ *
+ * @author adeshmukh
+ */
+public class RecordingWriter implements SweepListener, Closeable {
+
+    /**
+     * Size by which the mapping is extended.
+     */
+    private static final int MAPPING_SIZE = 1 << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Map<String, Integer> metricIds = new HashMap<String, Integer>();
+    private MappedByteBuffer mapping;
+    private long mappingStart;
+    private long position;
+    private ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * A column of a sweep block: the values of one kind of one metric.
+     */
+    private static final class Column {
+        final int metricId;
+        final byte kind;
+        final Object[] values;
+
+        Column(int metricId, byte kind, int numRows) {
+            this.metricId = metricId;
+            this.kind = kind;
+            this.values = new Object[numRows];
+        }
+    }
+
+    public RecordingWriter(File recording) throws IOException {
+        file = new RandomAccessFile(recording, "rw");
+        channel = file.getChannel();
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                RecordingFormat.writeHeader(header);
+                header.flip();
+                channel.write(header, 0);
+                position = HEADER_SIZE;
+            } else {
+                position = resume();
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Load the dictionary of the existing recording.
+     *
+     * @return offset at which to append
+     */
+    private long resume() throws IOException {
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Recording too large to append to");
+        }
+        return RecordingFormat.scan(channel.map(MapMode.READ_ONLY, 0, channel.size()),
+                new RecordingFormat.BlockVisitor() {
+                    @Override
+                    public void visit(byte type, ByteBuffer payload, int offset) {
+                        if (type == DICTIONARY) {
+                            int metricId = payload.getInt();
+                            metricIds.put(RecordingFormat.getString(payload), metricId);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Append the Records of the sweep, timestamped with the time of the {@link RecordBatch}, or else with the current
+     * time.
+     */
+    @Override
+    public void sweepCompleted(int sweep, Iterable<Record> records) {
+        try {
+            long timestamp = records instanceof RecordBatch
+                    ? ((RecordBatch) records).getTimestamp() : System.currentTimeMillis();
+            write(sweep, timestamp, records);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    public synchronized void write(int sweep, long timestamp, Iterable<Record> records) throws IOException {
+        List<Record> rows = new ArrayList<Record>();
+        for (Record record : records) {
+            rows.add(record);
+        }
+
+        // 1. Split the measures into columns, describing new metrics in dictionary blocks
+        Map<Long, Column> columns = new LinkedHashMap<Long, Column>();
+        for (int row = 0; row < rows.size(); row++) {
+            for (Measure<?> measure : rows.get(row).getMeasures()) {
+                Object value = measure.getValue();
+                if (value == null) {
+                    continue;
+                }
+                byte kind = kindOf(value);
+                int metricId = metricId(measure.getMetric());
+                Long key = ((long) metricId << 8) | kind;
+                Column column = columns.get(key);
+                if (column == null) {
+                    column = new Column(metricId, kind, rows.size());
+                    columns.put(key, column);
+                }
+                column.values[row] = value;
+            }
+        }
+
+        // 2. Write the sweep block
+        startBlock(SWEEP);
+        ensureCapacity(18 + rows.size() * 5);
+        block.putInt(sweep);
+        block.putLong(timestamp);
+        block.putInt(rows.size());
+        for (Record record : rows) {
+            block.putInt(record.getVmId());
+        }
+        for (Record record : rows) {
+            block.put(record.isTimedOut() ? FLAG_TIMED_OUT : 0);
+        }
+        block.putShort((short) columns.size());
+        for (Column column : columns.values()) {
+            ensureCapacity(5 + (rows.size() + 7) / 8);
+            block.putInt(column.metricId);
+            block.put(column.kind);
+            for (int row = 0; row < rows.size(); row += 8) {
+                int bits = 0;
+                for (int i = 0; i < 8 && row + i < rows.size(); i++) {
+                    if (column.values[row + i] != null) {
+                        bits |= 1 << i;
+                    }
+                }
+                block.put((byte) bits);
+            }
+            for (Object value : column.values) {
+                if (value != null) {
+                    putValue(column.kind, value);
+                }
+            }
+        }
+        endBlock();
+    }
+
+    private int metricId(Metric<?> metric) throws IOException {
+        Integer metricId = metricIds.get(metric.getName());
+        if (metricId == null) {
+            metricId = metricIds.size();
+            metricIds.put(metric.getName(), metricId);
+            startBlock(DICTIONARY);
+            ensureCapacity(8 + (metric.getName().length() + metric.getDescription().length()) * 3);
+            block.putInt(metricId);
+            RecordingFormat.putString(block, metric.getName());
+            RecordingFormat.putString(block, metric.getDescription());
+            endBlock();
+        }
+        return metricId;
+    }
+
+    private static byte kindOf(Object value) {
+        if (value instanceof Long) {
+            return KIND_LONG;
+        }
+        if (value instanceof Integer) {
+            return KIND_INTEGER;
+        }
+        if (value instanceof Double) {
+            return KIND_DOUBLE;
+        }
+        if (value instanceof Date) {
+            return KIND_DATE;
+        }
+        return KIND_STRING;
+    }
+
+    private void putValue(byte kind, Object value) {
+        switch (kind) {
+        case KIND_LONG:
+            ensureCapacity(8);
+            block.putLong((Long) value);
+            break;
+        case KIND_INTEGER:
+            ensureCapacity(4);
+            block.putInt((Integer) value);
+            break;
+        case KIND_DOUBLE:
+            ensureCapacity(8);
+            block.putDouble((Double) value);
+            break;
+        case KIND_DATE:
+            ensureCapacity(8);
+            block.putLong(((Date) value).getTime());
+            break;
+        default:
+            String s = value.toString();
+            ensureCapacity(2 + s.length() * 3);
+            RecordingFormat.putString(block, s);
+        }
+    }
+
+    private void startBlock(byte type) {
+        block.clear();
+        block.putInt(0);
+        block.put(type);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (block.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(block.capacity() * 2, block.position() + bytes));
+            block.flip();
+            larger.put(block);
+            block = larger;
+        }
+    }
+
+    /**
+     * Fill in the length of the block and append it to the file.
+     */
+    private void endBlock() throws IOException {
+        block.putInt(0, block.position() - BLOCK_HEADER_SIZE);
+        block.flip();
+        int length = block.remaining();
+        if (mapping == null || position + length > mappingStart + mapping.capacity()) {
+            mappingStart = position;
+            mapping = channel.map(MapMode.READ_WRITE, mappingStart, Math.max(MAPPING_SIZE, length));
+        }
+        mapping.position((int) (position - mappingStart));
+        mapping.put(block);
+        position += length;
+    }
+
+    /**
+     * Flush the recording and truncate the file to its end.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (mapping != null) {
+                mapping.force();
+                mapping = null;
+            }
+            channel.truncate(position);
+        } finally {
+            file.close();
+        }
+    }
+}